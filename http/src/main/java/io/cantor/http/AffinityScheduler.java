@@ -1,6 +1,7 @@
 package io.cantor.http;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -32,9 +33,15 @@ public class AffinityScheduler {
         executor = executors.next();
     }
 
+    /**
+     * Runs the command on the I/O loop, at once if it is called on the loop. It may be called
+     * from any thread, e.g. the one completing an asynchronous call, to write a response.
+     */
     public void io(final Runnable command) {
-        Threads.verify(WatchedThread.class);
-        worker.execute(command);
+        if (worker.inEventLoop())
+            command.run();
+        else
+            worker.execute(WatchedThread.watched(command));
     }
 
     protected void io4test(final Runnable cmd) {
@@ -50,6 +57,15 @@ public class AffinityScheduler {
         executor.submit(command);
     }
 
+    /**
+     * The compute loop of this scheduler as an {@link Executor}, which accepts commands from any
+     * thread, so that the callback of an asynchronous call can be resumed on it, e.g. by {@code
+     * CompletableFuture.whenCompleteAsync(action, scheduler.computeExecutor())}.
+     */
+    public Executor computeExecutor() {
+        return executor;
+    }
+
     public ScheduledFuture<?> schedule(final Runnable command, long delay, TimeUnit unit) {
         return executor.schedule(command, delay, unit);
     }
@@ -7,4 +7,11 @@ public interface Application {
     void handle(AffinityScheduler scheduler, HandlerRequest handlerRequest,
                 HandlerResponse handlerResponse) throws Exception;
 
+    /**
+     * @return true if the request is handled without blocking, so that it is handled on the I/O
+     * loop of its channel rather than handed over to a compute loop
+     */
+    default boolean inline(HandlerRequest handlerRequest) {
+        return false;
+    }
 }
@@ -34,6 +34,18 @@ public class Applications {
             return this;
         }
 
+        /**
+         * Registers a handler which never blocks, which is run on the I/O loop of the channel
+         * rather than on a compute loop. A {@link NonBlockingHandler} is registered so by any
+         * of the other methods as well.
+         */
+        public SimpleApplicationBuilder inline(@NonNull String path,
+                                               @NonNull RequestMappingRegistry.HttpMethodKey method,
+                                               AppRequestResponseHandler<AffinityScheduler, HandlerRequest, HandlerResponse> handler) {
+            mappingRegistry.registry(method, path, handler, true);
+            return this;
+        }
+
         public SimpleApplicationBuilder put(String path,
                                             AppRequestResponseHandler<AffinityScheduler, HandlerRequest, HandlerResponse> handler) {
             mappingRegistry.registry(PUT, path, handler);
@@ -59,6 +71,7 @@ public class Applications {
         }
 
         public Application build() {
+            mappingRegistry.compile();
             return new NativeApplication(mappingRegistry);
         }
     }
@@ -69,8 +82,19 @@ public class Applications {
         private RequestMappingRegistry<AffinityScheduler, HandlerRequest, HandlerResponse> mappingRegistry;
 
         @Override
-        public void handle(AffinityScheduler scheduler, HandlerRequest handlerRequest, HandlerResponse handlerResponse) throws Exception {
+        public boolean inline(HandlerRequest handlerRequest) {
             RequestMappingRegistry.PathMatcher pathMatcher = mappingRegistry.find(handlerRequest);
+            handlerRequest.matcher(pathMatcher);
+            return pathMatcher.matched() && pathMatcher.inline();
+        }
+
+        @Override
+        public void handle(AffinityScheduler scheduler, HandlerRequest handlerRequest, HandlerResponse handlerResponse) throws Exception {
+            RequestMappingRegistry.PathMatcher pathMatcher = handlerRequest.matcher();
+            if (null == pathMatcher) {
+                pathMatcher = mappingRegistry.find(handlerRequest);
+                handlerRequest.matcher(pathMatcher);
+            }
 
             if (pathMatcher.matched()) {
                 pathMatcher.serverHandler().handle(scheduler, handlerRequest, handlerResponse);
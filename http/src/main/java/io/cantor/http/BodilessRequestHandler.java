@@ -0,0 +1,58 @@
+package io.cantor.http;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Passes a request without a body, e.g. a GET of {@code /id}, on as a full request as soon as
+ * its empty last content is decoded, so that only a request carrying a body is aggregated by
+ * the {@code HttpObjectAggregator} behind it, which builds a composite content for every
+ * request.
+ */
+class BodilessRequestHandler extends ChannelInboundHandlerAdapter {
+
+    // the bodiless request whose last content is expected next
+    private HttpRequest bodiless;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (null != bodiless) {
+            HttpRequest request = bodiless;
+            bodiless = null;
+            if (msg instanceof LastHttpContent && empty((LastHttpContent) msg)) {
+                ReferenceCountUtil.release(msg);
+                ctx.fireChannelRead(new SequencedHttpRequest(request));
+            } else {
+                // not the content expected, which is left to the aggregator
+                ctx.fireChannelRead(request);
+                ctx.fireChannelRead(msg);
+            }
+            return;
+        }
+
+        if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)
+                && bodiless((HttpRequest) msg)) {
+            bodiless = (HttpRequest) msg;
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    private static boolean bodiless(HttpRequest request) {
+        return request.decoderResult().isSuccess()
+                && !HttpUtil.isTransferEncodingChunked(request)
+                && !HttpUtil.is100ContinueExpected(request)
+                && 0 == HttpUtil.getContentLength(request, 0L);
+    }
+
+    private static boolean empty(LastHttpContent content) {
+        return LastHttpContent.EMPTY_LAST_CONTENT == content
+                || (content.decoderResult().isSuccess() && !content.content().isReadable()
+                && content.trailingHeaders().isEmpty());
+    }
+}
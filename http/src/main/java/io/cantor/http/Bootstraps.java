@@ -1,17 +1,67 @@
 package io.cantor.http;
 
+import java.util.concurrent.ThreadFactory;
+
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class Bootstraps {
 
-    private static boolean USE_EPOLL = System.getProperty("os.name").toLowerCase().equals("linux");
+    /**
+     * Set to false to use the NIO transport even if the native epoll one is available.
+     */
+    public static final String EPOLL_PROPERTY = "cantor.http.epoll";
+
+    private static final int TCP_FASTOPEN_QUEUE = 256;
+
+    private static boolean USE_EPOLL = System.getProperty("os.name").toLowerCase().equals("linux")
+            && Boolean.parseBoolean(System.getProperty(EPOLL_PROPERTY, "true"))
+            && epollAvailable();
+
+    private static boolean epollAvailable() {
+        if (Epoll.isAvailable())
+            return true;
+
+        if (log.isWarnEnabled())
+            log.warn("native epoll is unavailable, fall back to nio", Epoll.unavailabilityCause());
+        return false;
+    }
+
+    /**
+     * @return true if the server sockets are epoll ones, which are bound with {@code
+     * SO_REUSEPORT} so that a listener can be bound per I/O loop
+     */
+    public static boolean epoll() {
+        return USE_EPOLL;
+    }
+
+    /**
+     * @return an epoll event loop group if the epoll transport is used, or a nio one
+     */
+    static EventLoopGroup eventLoopGroup(int threads, ThreadFactory threadFactory, int ioRatio) {
+        if (USE_EPOLL) {
+            EpollEventLoopGroup group = new EpollEventLoopGroup(threads, threadFactory);
+            group.setIoRatio(ioRatio);
+            return group;
+        }
+        NioEventLoopGroup group = new NioEventLoopGroup(threads, threadFactory);
+        group.setIoRatio(ioRatio);
+        return group;
+    }
 
     public static ServerBootstrap serverBootstrap(EventLoopGroup acceptors,
                                                   EventLoopGroup workers) {
@@ -26,7 +76,15 @@ public class Bootstraps {
                                                          .option(ChannelOption.SO_REUSEADDR,
                                                                  true);
 
-        bootstrap.channel(NioServerSocketChannel.class);
+        if (USE_EPOLL) {
+            bootstrap.channel(EpollServerSocketChannel.class)
+                     .option(EpollChannelOption.SO_REUSEPORT, true)
+                     .option(EpollChannelOption.TCP_FASTOPEN, TCP_FASTOPEN_QUEUE)
+                     .option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                     .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+        } else {
+            bootstrap.channel(NioServerSocketChannel.class);
+        }
         bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK,
                          new WriteBufferWaterMark(32 * 1024, 128 * 1024));
 
@@ -3,6 +3,7 @@ package io.cantor.http;
 import java.util.Queue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SingleThreadEventLoop;
@@ -13,20 +14,56 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 class ComputeEventLoop extends SingleThreadEventLoop {
 
-    ComputeEventLoop(EventLoopGroup parent, Executor executor, int maxPendingTasks) {
-        super(parent, executor, true, maxPendingTasks, RejectedExecutionHandlers.reject());
-    }
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final WaitStrategy strategy;
+    private final int spins;
+    private final int yields;
+    private final long maxParkNanos;
+    private final ComputeEventLoopMetrics metrics;
 
-    private void sleepDream() throws Exception{
-        TimeUnit.MICROSECONDS.sleep(10);
+    private volatile Thread thread;
+    private volatile boolean parked;
+    private volatile long wakeupNanos;
+
+    /**
+     * @param spins        idle rounds which only spin before yielding, for {@link
+     *                     WaitStrategy#BACKOFF}
+     * @param yields       idle rounds which yield before parking, for {@link
+     *                     WaitStrategy#BACKOFF}
+     * @param maxParkNanos the longest park of {@link WaitStrategy#BACKOFF}
+     */
+    ComputeEventLoop(EventLoopGroup parent, Executor executor, int maxPendingTasks,
+                     WaitStrategy strategy, int spins, int yields, long maxParkNanos,
+                     ComputeEventLoopMetrics metrics) {
+        // the submission of a task wakes the loop up by wakeup(boolean), if it is parked
+        super(parent, executor, false, maxPendingTasks, RejectedExecutionHandlers.reject());
+        this.strategy = strategy;
+        this.spins = spins;
+        this.yields = yields;
+        this.maxParkNanos = maxParkNanos;
+        this.metrics = metrics;
     }
 
     @Override
     protected void run() {
+        thread = Thread.currentThread();
+        WatchedThread watched = Threads.current(WatchedThread.class);
+        int idles = 0;
+        long idleSince = 0;
         for (; ; ) {
             try {
-                if (!runAllTasks())
-                    sleepDream();
+                if (runWatchedTasks(watched)) {
+                    if (0 != idleSince) {
+                        metrics.idle(System.nanoTime() - idleSince);
+                        idleSince = 0;
+                    }
+                    idles = 0;
+                } else {
+                    if (0 == idleSince)
+                        idleSince = System.nanoTime();
+                    idle(idles++);
+                }
             } catch (Throwable t) {
                 handleLoopException(t);
             }
@@ -43,6 +80,90 @@ class ComputeEventLoop extends SingleThreadEventLoop {
         }
     }
 
+    /**
+     * Runs the scheduled tasks which are due and then the submitted ones like {@link
+     * #runAllTasks()}, which has no hook around a task, timing every task on the watched thread.
+     *
+     * @return true if any task ran
+     */
+    private boolean runWatchedTasks(WatchedThread watched) {
+        boolean ran = false;
+        long now = nanoTime();
+        for (Runnable task = pollScheduledTask(now); null != task; task = pollScheduledTask(now)) {
+            runWatched(watched, task);
+            ran = true;
+        }
+        for (Runnable task = pollTask(); null != task; task = pollTask()) {
+            runWatched(watched, task);
+            ran = true;
+        }
+        if (ran)
+            updateLastExecutionTime();
+        afterRunningAllTasks();
+        return ran;
+    }
+
+    private static void runWatched(WatchedThread watched, Runnable task) {
+        Object enclosing = null == watched ? null : watched.watch(task);
+        try {
+            safeExecute(task);
+        } finally {
+            if (null != watched)
+                watched.stopWatch(enclosing);
+        }
+    }
+
+    private void idle(int idles) {
+        switch (strategy) {
+            case BUSY_SPIN:
+                return;
+            case BACKOFF:
+                if (idles < spins)
+                    return;
+                if (idles < spins + yields) {
+                    Thread.yield();
+                    return;
+                }
+                int shift = Math.min(idles - spins - yields, Long.SIZE - 2);
+                park(Math.min(MIN_PARK_NANOS << shift, maxParkNanos));
+                return;
+            default:
+                park(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Parks until a task is submitted, the next scheduled task is due or the time is up.
+     */
+    private void park(long nanos) {
+        parked = true;
+        try {
+            if (hasTasks())
+                return;
+            long delay = Math.min(nanos, delayNanos(nanoTime()));
+            if (delay <= 0)
+                return;
+
+            metrics.park();
+            LockSupport.parkNanos(this, delay);
+            long wakeup = wakeupNanos;
+            if (0 != wakeup) {
+                metrics.wakeup(System.nanoTime() - wakeup);
+                wakeupNanos = 0;
+            }
+        } finally {
+            parked = false;
+        }
+    }
+
+    @Override
+    protected void wakeup(boolean inEventLoop) {
+        if (!inEventLoop && parked) {
+            wakeupNanos = System.nanoTime();
+            LockSupport.unpark(thread);
+        }
+    }
+
     private static void handleLoopException(Throwable t) {
         if (log.isWarnEnabled())
             log.warn("Unexpected exception in the event loop.", t);
@@ -5,13 +5,27 @@ import java.util.concurrent.ThreadFactory;
 
 import io.netty.channel.EventLoop;
 import io.netty.channel.MultithreadEventLoopGroup;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class ComputeEventLoopGroup extends MultithreadEventLoopGroup {
 
-    ComputeEventLoopGroup(int nThreads, ThreadFactory threadFactory, int maxPendingTasks) {
-        super(nThreads, threadFactory, maxPendingTasks);
+    @Getter
+    private final ComputeEventLoopMetrics metrics;
+
+    ComputeEventLoopGroup(int nThreads, ThreadFactory threadFactory, int maxPendingTasks,
+                          WaitStrategy strategy, int spins, int yields, long maxParkNanos) {
+        this(nThreads, threadFactory, maxPendingTasks, strategy, spins, yields, maxParkNanos,
+             new ComputeEventLoopMetrics());
+    }
+
+    private ComputeEventLoopGroup(int nThreads, ThreadFactory threadFactory, int maxPendingTasks,
+                                  WaitStrategy strategy, int spins, int yields,
+                                  long maxParkNanos, ComputeEventLoopMetrics metrics) {
+        super(nThreads, threadFactory, maxPendingTasks, strategy, spins, yields, maxParkNanos,
+              metrics);
+        this.metrics = metrics;
     }
 
     @Override
@@ -26,6 +40,8 @@ public class ComputeEventLoopGroup extends MultithreadEventLoopGroup {
                         log.warn("executor.queue.size has not been configured", e);
                 }
 
-        return new ComputeEventLoop(this, executor, maxPendingTasks);
+        return new ComputeEventLoop(this, executor, maxPendingTasks, (WaitStrategy) args[1],
+                                    (int) args[2], (int) args[3], (long) args[4],
+                                    (ComputeEventLoopMetrics) args[5]);
     }
 }
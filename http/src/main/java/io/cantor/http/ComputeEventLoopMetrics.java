@@ -0,0 +1,66 @@
+package io.cantor.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The idle time and wakeup latency of the loops of a {@link ComputeEventLoopGroup}.
+ */
+public class ComputeEventLoopMetrics {
+
+    private final LongAdder idleNanos = new LongAdder();
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder wakeups = new LongAdder();
+    private final LongAdder wakeupNanos = new LongAdder();
+    private final AtomicLong maxWakeupNanos = new AtomicLong();
+
+    void idle(long nanos) {
+        idleNanos.add(nanos);
+    }
+
+    void park() {
+        parks.increment();
+    }
+
+    void wakeup(long latencyNanos) {
+        wakeups.increment();
+        wakeupNanos.add(latencyNanos);
+        maxWakeupNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    /**
+     * @return the time the loops spent without a task to run
+     */
+    public long idleNanos() {
+        return idleNanos.sum();
+    }
+
+    /**
+     * @return times the loops parked while idle
+     */
+    public long parks() {
+        return parks.sum();
+    }
+
+    /**
+     * @return times a parked loop was unparked by a submitted task
+     */
+    public long wakeups() {
+        return wakeups.sum();
+    }
+
+    /**
+     * @return the mean time from the submission of a task to the unparked loop running
+     */
+    public long meanWakeupNanos() {
+        long count = wakeups.sum();
+        return 0 == count ? 0 : wakeupNanos.sum() / count;
+    }
+
+    /**
+     * @return the longest time from the submission of a task to the unparked loop running
+     */
+    public long maxWakeupNanos() {
+        return maxWakeupNanos.get();
+    }
+}
@@ -0,0 +1,227 @@
+package io.cantor.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The processors this process may run on, grouped by the last level cache they share, read from
+ * the sysfs of Linux. The processors sharing a cache are also on the same NUMA node, so a pair
+ * of loops in the same domain hands its tasks over through a shared cache.
+ */
+@Slf4j
+class CpuTopology {
+
+    private static final Path STATUS = Paths.get("/proc/self/status");
+    private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+    private static final String CPU_DIR = "/sys/devices/system/cpu/cpu%s";
+    private static final String[] DOMAIN_FILES = {"cache/index3/shared_cpu_list",
+                                                  "topology/package_cpus_list",
+                                                  "topology/core_siblings_list"};
+    private static final String CPUS_ALLOWED = "Cpus_allowed_list:";
+    private static final String TASKSET = "taskset";
+    private static final long PIN_TIMEOUT_SECONDS = 5L;
+
+    private final List<List<Integer>> domains;
+
+    private CpuTopology(List<List<Integer>> domains) {
+        this.domains = domains;
+    }
+
+    /**
+     * @return the topology of the allowed processors, which is a single domain of the available
+     * processors if it can not be read
+     */
+    static CpuTopology detect() {
+        TreeSet<Integer> allowed = allowed();
+        Map<String, List<Integer>> domains = new LinkedHashMap<>();
+        for (int cpu : allowed)
+            domains.computeIfAbsent(domain(cpu), k -> new ArrayList<>()).add(cpu);
+        return new CpuTopology(new ArrayList<>(domains.values()));
+    }
+
+    List<List<Integer>> domains() {
+        return domains;
+    }
+
+    int cpus() {
+        int count = 0;
+        for (List<Integer> domain : domains)
+            count += domain.size();
+        return count;
+    }
+
+    /**
+     * Dedicates a processor to every I/O and compute loop, where each domain takes the share of
+     * both kinds of loops in proportion to its processors.
+     *
+     * @return the processors of the I/O loops followed by the ones of the compute loops, and
+     * their domains; or null if there are fewer processors than loops
+     */
+    Layout layout(int io, int compute) {
+        int total = cpus();
+        if (io + compute > total)
+            return null;
+
+        Layout layout = new Layout(io, compute);
+        int[] ioShares = shares(io, total, new int[domains.size()]);
+        int[] computeShares = shares(compute, total, ioShares);
+        int ioIndex = 0;
+        int computeIndex = 0;
+        for (int d = 0; d < domains.size(); d++) {
+            List<Integer> cpus = domains.get(d);
+            int next = 0;
+            for (int i = 0; i < ioShares[d]; i++, ioIndex++) {
+                layout.ioCpus[ioIndex] = cpus.get(next++);
+                layout.ioDomains[ioIndex] = d;
+            }
+            for (int i = 0; i < computeShares[d]; i++, computeIndex++) {
+                layout.computeCpus[computeIndex] = cpus.get(next++);
+                layout.computeDomains[computeIndex] = d;
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * @param taken the processors of each domain which are taken by other loops
+     * @return the loops of each domain, in proportion to its processors and never more than the
+     * ones left
+     */
+    private int[] shares(int loops, int total, int[] taken) {
+        int[] shares = new int[domains.size()];
+        int assigned = 0;
+        for (int d = 0; d < shares.length; d++) {
+            int left = domains.get(d).size() - taken[d];
+            shares[d] = Math.min(loops * domains.get(d).size() / total, left);
+            assigned += shares[d];
+        }
+        for (int d = 0; assigned < loops; d = (d + 1) % shares.length) {
+            if (shares[d] < domains.get(d).size() - taken[d]) {
+                shares[d]++;
+                assigned++;
+            }
+        }
+        return shares;
+    }
+
+    /**
+     * @return the {@code taskset} of util-linux found on the PATH, or null if it is absent or the
+     * threads can not read their own ids from {@code /proc/thread-self}, so no thread can be pinned
+     */
+    static Path taskset() {
+        if (!Files.isSymbolicLink(THREAD_SELF))
+            return null;
+        String paths = System.getenv("PATH");
+        if (null == paths)
+            return null;
+        for (String dir : paths.split(File.pathSeparator)) {
+            if (dir.isEmpty())
+                continue;
+            Path taskset = Paths.get(dir, TASKSET);
+            if (Files.isRegularFile(taskset) && Files.isExecutable(taskset))
+                return taskset;
+        }
+        return null;
+    }
+
+    /**
+     * Pins the calling thread to the processor by {@code taskset}, as the JDK has no affinity API.
+     *
+     * @param taskset the executable found by {@link #taskset()}
+     * @return true if the thread is pinned
+     */
+    static boolean pin(Path taskset, int cpu) {
+        try {
+            // resolves to <pid>/task/<tid>
+            Path self = Files.readSymbolicLink(THREAD_SELF);
+            String tid = self.getFileName().toString();
+            Process process = new ProcessBuilder(taskset.toString(), "-p", "-c",
+                                                 String.valueOf(cpu), tid)
+                    .redirectErrorStream(true)
+                    .start();
+            if (process.waitFor(PIN_TIMEOUT_SECONDS, TimeUnit.SECONDS) && 0 == process.exitValue())
+                return true;
+            process.destroy();
+        } catch (IOException e) {
+            if (log.isDebugEnabled())
+                log.debug("pin {} to cpu {} failed", Thread.currentThread().getName(), cpu, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static TreeSet<Integer> allowed() {
+        try {
+            for (String line : Files.readAllLines(STATUS, StandardCharsets.US_ASCII)) {
+                if (line.startsWith(CPUS_ALLOWED))
+                    return parse(line.substring(CPUS_ALLOWED.length()));
+            }
+        } catch (IOException | RuntimeException e) {
+            if (log.isDebugEnabled())
+                log.debug("read the allowed cpus failed", e);
+        }
+
+        TreeSet<Integer> cpus = new TreeSet<>();
+        for (int cpu = 0; cpu < Runtime.getRuntime().availableProcessors(); cpu++)
+            cpus.add(cpu);
+        return cpus;
+    }
+
+    private static String domain(int cpu) {
+        for (String file : DOMAIN_FILES) {
+            Path path = Paths.get(String.format(CPU_DIR, cpu), file);
+            try {
+                if (Files.isReadable(path))
+                    return new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim();
+            } catch (IOException e) {
+                if (log.isDebugEnabled())
+                    log.debug("read {} failed", path, e);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @param list a cpu list of Linux, e.g. {@code 0-3,8,10-11}
+     */
+    static TreeSet<Integer> parse(String list) {
+        TreeSet<Integer> cpus = new TreeSet<>();
+        for (String part : list.trim().split(",")) {
+            if (part.isEmpty())
+                continue;
+            int dash = part.indexOf('-');
+            int from = Integer.parseInt((dash < 0 ? part : part.substring(0, dash)).trim());
+            int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1).trim());
+            for (int cpu = from; cpu <= to; cpu++)
+                cpus.add(cpu);
+        }
+        return cpus;
+    }
+
+    static class Layout {
+        final int[] ioCpus;
+        final int[] ioDomains;
+        final int[] computeCpus;
+        final int[] computeDomains;
+
+        Layout(int io, int compute) {
+            ioCpus = new int[io];
+            ioDomains = new int[io];
+            computeCpus = new int[compute];
+            computeDomains = new int[compute];
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.cantor.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * The tasks timed on a single I/O or compute loop: their count, the ones which stalled the loop
+ * for longer than the watch duration and a histogram of their latency, with the tasks pending on
+ * the loop.
+ * <p>
+ * A loop only records its own tasks, so the counters are written by a single thread and read by
+ * any.
+ */
+public class EventLoopMetrics {
+
+    /**
+     * The upper bound of the first bucket, every next bucket doubles it, and the last one has no
+     * bound.
+     */
+    public static final long FIRST_BUCKET_MICROS = 1L;
+    public static final int BUCKETS = 24;
+
+    private static final int TASKS = BUCKETS;
+    private static final int STALLS = BUCKETS + 1;
+    private static final int MAX_NANOS = BUCKETS + 2;
+
+    private final String name;
+    private final EventExecutor loop;
+    // the buckets followed by the tasks, stalls and the longest task
+    private final AtomicLongArray counters = new AtomicLongArray(BUCKETS + 3);
+
+    EventLoopMetrics(String name, EventExecutor loop) {
+        this.name = name;
+        this.loop = loop;
+    }
+
+    /**
+     * Called only on the loop.
+     */
+    void record(long nanos, boolean stalled) {
+        increment(bucket(nanos));
+        increment(TASKS);
+        if (stalled)
+            increment(STALLS);
+        if (nanos > counters.get(MAX_NANOS))
+            counters.lazySet(MAX_NANOS, nanos);
+    }
+
+    private void increment(int index) {
+        counters.lazySet(index, counters.get(index) + 1);
+    }
+
+    private static int bucket(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos) / FIRST_BUCKET_MICROS;
+        int bucket = 0 == micros ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * @return the name of the loop, e.g. {@code io-0}
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the tasks waiting in the queue of the loop
+     */
+    public int pendingTasks() {
+        return loop instanceof SingleThreadEventExecutor
+               ? ((SingleThreadEventExecutor) loop).pendingTasks() : 0;
+    }
+
+    public long tasks() {
+        return counters.get(TASKS);
+    }
+
+    /**
+     * @return the tasks which ran for longer than the watch duration
+     */
+    public long stalls() {
+        return counters.get(STALLS);
+    }
+
+    public long maxNanos() {
+        return counters.get(MAX_NANOS);
+    }
+
+    /**
+     * @return the tasks of every bucket, where bucket {@code i} holds the ones below {@code
+     * FIRST_BUCKET_MICROS << i} microseconds
+     */
+    public long[] histogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            histogram[i] = counters.get(i);
+        return histogram;
+    }
+
+    /**
+     * @param percentile in (0, 100]
+     * @return the upper bound of the bucket holding the percentile of the tasks, in microseconds,
+     * or the longest task if it is in the last bucket
+     */
+    public long percentileMicros(double percentile) {
+        long[] histogram = histogram();
+        long total = 0;
+        for (long count : histogram)
+            total += count;
+        if (0 == total)
+            return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += histogram[i];
+            if (seen >= rank)
+                return FIRST_BUCKET_MICROS << i;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos());
+    }
+}
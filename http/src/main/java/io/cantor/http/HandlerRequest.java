@@ -1,119 +1,177 @@
 package io.cantor.http;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.QueryStringDecoder;
 
+/**
+ * A request to a handler, which keeps the netty request and decodes the uri, queries, body and
+ * remote address only on their first access. The request holds a reference of its content until
+ * it is released by the server, once the response is written, so the body should not be read
+ * after the response has been completed.
+ */
 public class HandlerRequest {
 
     private static final int EMPTY = 0;
+    private static final String DOUBLE_SLASH = "//";
 
-    private String uri;
+    private final FullHttpRequest request;
+
+    private final Channel channel;
 
-    private HttpVersion version;
+    private final AtomicBoolean released = new AtomicBoolean(false);
 
-    private String method;
+    private String uri;
 
     private HttpHeaders headers;
 
     private byte[] content;
 
-    private Map<String, String> pathVariables = new HashMap<>();
+    private Map<String, String> pathVariables;
 
     private Map<String, String> query;
 
-    private String remoteHostAddress;
+    private InetSocketAddress remoteAddress;
 
-    private int remotePort;
+    private RequestMappingRegistry.PathMatcher matcher;
 
     HandlerRequest(FullHttpRequest request, Channel channel) {
-        this.uri = request.uri();
-        mergeURISlash();
-        SocketAddress socketAddress = channel.remoteAddress();
-        if (InetSocketAddress.class.isAssignableFrom(socketAddress.getClass())) {
-            InetSocketAddress inetSocketAddress = InetSocketAddress.class.cast(socketAddress);
-            if (inetSocketAddress.getAddress() != null) {
-                remoteHostAddress = inetSocketAddress.getAddress().getHostAddress();
-            } else {
-                remoteHostAddress = inetSocketAddress.getHostString();
-            }
-            remotePort = inetSocketAddress.getPort();
-        }
-        this.version = request.protocolVersion();
-        this.method = request.method().name();
-        this.content = ByteBufUtil.getBytes(request.content());
-        this.headers = new HttpHeaders(request.headers());
-        QueryStringDecoder queryStringDecoder = new QueryStringDecoder(request.uri(), true);
-        this.query = new HashMap<>();
-        queryStringDecoder.parameters().forEach((k, valueList) -> {
-            if (null != valueList && valueList.size() > EMPTY)
-                this.query.put(k, valueList.get(0));
-        });
+        this.request = request;
+        this.channel = channel;
     }
 
     public String uri() {
+        if (null == uri)
+            uri = mergeURISlash(request.uri());
         return uri;
     }
 
     public String version() {
-        return version.text();
+        return request.protocolVersion().text();
     }
 
     public String method() {
-        return method;
+        return request.method().name();
     }
 
     public HttpHeaders headers() {
+        if (null == headers)
+            headers = new HttpHeaders(request.headers());
         return headers;
     }
 
     public InputStream stream() {
-        return new ByteArrayInputStream(content);
+        return new ByteBufInputStream(request.content().duplicate());
     }
 
     public void pathVariables(String key, String value) {
+        if (null == pathVariables)
+            pathVariables = new HashMap<>();
         pathVariables.put(key, value);
     }
 
     public String pathVariables(String key) {
-        return pathVariables.get(key);
+        return null == pathVariables ? null : pathVariables.get(key);
     }
 
     public Map<String, String> queries() {
-        return this.query;
+        if (null == query) {
+            Map<String, String> decoded = new HashMap<>();
+            new QueryStringDecoder(request.uri(), true).parameters().forEach((k, valueList) -> {
+                if (null != valueList && valueList.size() > EMPTY)
+                    decoded.put(k, valueList.get(0));
+            });
+            query = decoded;
+        }
+        return query;
     }
 
     public byte[] body() {
+        if (null == content)
+            content = ByteBufUtil.getBytes(request.content());
         return content;
     }
 
     public <T> T body(Class<T> valueType) throws IOException {
-        return Codecs.json().readValue(content, valueType);
+        return Codecs.json().readValue(stream(), valueType);
     }
 
     public <T> T body(TypeRef<T> typeRef) throws IOException {
-        return Codecs.json().readValue(content, JacksonTypeRefs.typeRef(typeRef));
+        return Codecs.json().readValue(stream(), JacksonTypeRefs.typeRef(typeRef));
     }
 
     public String remoteHostAddress() {
-        return remoteHostAddress;
+        InetSocketAddress address = remoteAddress();
+        if (null == address)
+            return null;
+        return null != address.getAddress() ? address.getAddress().getHostAddress()
+                                            : address.getHostString();
     }
 
     public int remotePort() {
-        return remotePort;
+        InetSocketAddress address = remoteAddress();
+        return null == address ? 0 : address.getPort();
+    }
+
+    /**
+     * @return the route found for the request, or null if it has not been routed yet
+     */
+    RequestMappingRegistry.PathMatcher matcher() {
+        return matcher;
+    }
+
+    void matcher(RequestMappingRegistry.PathMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * @return the order of the request on its connection, or {@link
+     * HttpPipeliningHandler#UNSEQUENCED} if it is not pipelined
+     */
+    int sequence() {
+        return request instanceof SequencedHttpRequest
+               ? ((SequencedHttpRequest) request).sequence() : HttpPipeliningHandler.UNSEQUENCED;
+    }
+
+    /**
+     * @return the method, the raw uri and the handler of the request, which is safe to call from
+     * a thread other than the one handling it
+     */
+    String describe() {
+        RequestMappingRegistry.PathMatcher pm = matcher;
+        String request = this.request.method().name() + " " + this.request.uri();
+        return null == pm || null == pm.serverHandler()
+               ? request : request + " by " + pm.serverHandler().getClass().getName();
+    }
+
+    /**
+     * Releases the content of the request, only the first call takes effect.
+     */
+    void release() {
+        if (released.compareAndSet(false, true))
+            request.release();
+    }
+
+    private InetSocketAddress remoteAddress() {
+        if (null == remoteAddress) {
+            SocketAddress socketAddress = channel.remoteAddress();
+            if (socketAddress instanceof InetSocketAddress)
+                remoteAddress = (InetSocketAddress) socketAddress;
+        }
+        return remoteAddress;
     }
 
-    private void mergeURISlash() {
-        uri = uri.replaceAll("//+", "/");
+    private static String mergeURISlash(String uri) {
+        return uri.contains(DOUBLE_SLASH) ? uri.replaceAll("//+", "/") : uri;
     }
 }
@@ -4,19 +4,33 @@ import java.io.OutputStream;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufOutputStream;
-import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AsciiString;
+import io.netty.util.CharsetUtil;
 
 public class HandlerResponse {
 
     private static final byte[] EMPTY_BODY = "".getBytes();
+    private static final int INITIAL_CONTENT_CAPACITY = 64;
+    private static final int CACHED_LENGTHS = 1024;
+    private static final AsciiString[] CONTENT_LENGTHS = new AsciiString[CACHED_LENGTHS];
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    static {
+        for (int i = 0; i < CACHED_LENGTHS; i++)
+            CONTENT_LENGTHS[i] = AsciiString.of(Integer.toString(i));
+    }
 
     private AtomicBoolean ok = new AtomicBoolean(true);
 
+    private final HandlerRequest request;
+
     private FullHttpResponse delegator;
     private HttpStatus status;
     private HttpHeaders headers;
@@ -24,29 +38,47 @@ public class HandlerResponse {
     private Runnable completer;
     private TriConsumer<FullHttpResponse, Runnable, Consumer<Throwable>> writer;
     private AffinityScheduler scheduler;
+    private ByteBufAllocator alloc;
     private String httpVer;
 
+    /**
+     * @param alloc allocates the content, which is released once the response is written
+     */
     HandlerResponse(HandlerRequest request,
                     AffinityScheduler scheduler,
+                    ByteBufAllocator alloc,
                     TriConsumer<FullHttpResponse, Runnable, Consumer<Throwable>> writer) {
+        this.request = request;
         this.httpVer = request.version();
         this.scheduler = scheduler;
+        this.alloc = alloc;
         this.writer = writer;
     }
 
     private void checkAndInit() {
         if (ok.compareAndSet(true, false)) {
-            delegator = new DefaultFullHttpResponse(HttpVersion.valueOf(httpVer),
-                                                    HttpResponseStatus.OK);
-            status = new HttpStatus(delegator);
-            headers = new HttpHeaders(delegator.headers());
+            delegator = SequencedHttpResponse.of(request,
+                                                 HttpVersion.valueOf(httpVer),
+                                                 HttpResponseStatus.OK,
+                                                 alloc.ioBuffer(INITIAL_CONTENT_CAPACITY),
+                                                 false);
         }
     }
+
     public HandlerResponse header(String name, String value) {
         headers().set(name, value);
         return this;
     }
 
+    /**
+     * Sets a header without converting the name and value, which is cheapest with the
+     * constants of {@link HttpHeaders#constant(String)}.
+     */
+    public HandlerResponse header(CharSequence name, CharSequence value) {
+        delegator().headers().set(name, value);
+        return this;
+    }
+
     public HandlerResponse statusCode(int code) {
         status().code(code);
         return this;
@@ -54,11 +86,15 @@ public class HandlerResponse {
 
     public HttpStatus status() {
         checkAndInit();
+        if (null == status)
+            status = new HttpStatus(delegator);
         return status;
     }
 
     public HttpHeaders headers() {
         checkAndInit();
+        if (null == headers)
+            headers = new HttpHeaders(delegator.headers());
         return headers;
     }
 
@@ -68,6 +104,61 @@ public class HandlerResponse {
         return this;
     }
 
+    public HandlerResponse writeLongLE(long value) {
+        checkAndInit();
+        delegator.content().writeLongLE(value);
+        return this;
+    }
+
+    public HandlerResponse writeIntLE(int value) {
+        checkAndInit();
+        delegator.content().writeIntLE(value);
+        return this;
+    }
+
+    /**
+     * Writes the bytes of a pre-encoded constant, such as a fixed part of a JSON body.
+     */
+    public HandlerResponse writeAscii(CharSequence constant) {
+        checkAndInit();
+        if (constant instanceof AsciiString) {
+            AsciiString ascii = (AsciiString) constant;
+            delegator.content().writeBytes(ascii.array(), ascii.arrayOffset(), ascii.length());
+        } else {
+            delegator.content().writeCharSequence(constant, CharsetUtil.US_ASCII);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the decimal digits of the value, as {@link Long#toString(long)} does, without
+     * creating the string.
+     */
+    public HandlerResponse writeDecimal(long value) {
+        checkAndInit();
+        ByteBuf content = delegator.content();
+        if (Long.MIN_VALUE == value) {
+            content.writeBytes(MIN_LONG);
+            return this;
+        }
+        if (value < 0) {
+            content.writeByte('-');
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10)
+            digits++;
+        content.ensureWritable(digits);
+        int start = content.writerIndex();
+        for (int i = start + digits - 1; i >= start; i--) {
+            content.setByte(i, (int) ('0' + value % 10));
+            value /= 10;
+        }
+        content.writerIndex(start + digits);
+        return this;
+    }
+
     public OutputStream stream() {
         checkAndInit();
         return new ByteBufOutputStream(delegator.content());
@@ -83,17 +174,26 @@ public class HandlerResponse {
     }
 
     public void complete() {
-        checkAndInit();
-        if (!headers().contains(HttpHeaderNames.CONTENT_LENGTH.toString())) {
-            int length = delegator().content().writerIndex();
-            headers().set(HttpHeaderNames.CONTENT_LENGTH.toString(), length);
-        }
-
+        FullHttpResponse response = seal();
         scheduler.io(() -> {
-            writer.accept(delegator, completer, catcher);
+            writer.accept(response, completer, catcher);
         });
     }
 
+    /**
+     * @return the response to be written, with its content length set
+     */
+    FullHttpResponse seal() {
+        checkAndInit();
+        io.netty.handler.codec.http.HttpHeaders nettyHeaders = delegator.headers();
+        if (!nettyHeaders.contains(HttpHeaderNames.CONTENT_LENGTH)) {
+            int length = delegator.content().writerIndex();
+            nettyHeaders.set(HttpHeaderNames.CONTENT_LENGTH, length < CACHED_LENGTHS
+                    ? CONTENT_LENGTHS[length] : AsciiString.of(Integer.toString(length)));
+        }
+        return delegator;
+    }
+
     public void ok() {
         complete(HttpResponseStatus.OK.code(), EMPTY_BODY);
     }
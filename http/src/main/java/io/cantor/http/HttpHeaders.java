@@ -7,15 +7,25 @@ import java.util.Set;
 
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.util.AsciiString;
 
 public class HttpHeaders {
     public static final String CONTENT_TYPE = HttpHeaderNames.CONTENT_TYPE.toString();
+    public static final String ACCEPT = HttpHeaderNames.ACCEPT.toString();
     public static final String APPLICATION_JSON = HttpHeaderValues.APPLICATION_JSON.toString();
     public static final String APPLICATION_X_WWW_FORM_URLENCODED =
             HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.toString();
 
     private io.netty.handler.codec.http.HttpHeaders headers;
 
+    /**
+     * Encodes a header name or value once, to be set or written repeatedly without being
+     * encoded again.
+     */
+    public static CharSequence constant(String value) {
+        return AsciiString.cached(value);
+    }
+
     public HttpHeaders(io.netty.handler.codec.http.HttpHeaders headers) {
         this.headers = headers;
     }
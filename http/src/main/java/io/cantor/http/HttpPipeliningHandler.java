@@ -0,0 +1,103 @@
+package io.cantor.http;
+
+import java.nio.channels.ClosedChannelException;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lets a client pipeline requests on a connection. The requests are numbered in the order they
+ * are read, and a response completed ahead of the ones of earlier requests is held back, so that
+ * the responses are written in the order of their requests, as HTTP/1.1 requires, whichever loop
+ * completes them.
+ * <p>
+ * A connection holding back more than {@code maxPending} responses is closed.
+ */
+@Slf4j
+class HttpPipeliningHandler extends ChannelDuplexHandler {
+
+    static final int UNSEQUENCED = -1;
+
+    private final int maxPending;
+
+    private final IntObjectMap<Pending> pending = new IntObjectHashMap<>();
+
+    // the sequence of the next request to read and of the next response to write
+    private int reads;
+    private int writes;
+
+    HttpPipeliningHandler(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof SequencedHttpRequest) {
+            ctx.fireChannelRead(((SequencedHttpRequest) msg).sequence(reads));
+            reads = next(reads);
+        } else if (msg instanceof FullHttpRequest) {
+            ctx.fireChannelRead(new SequencedHttpRequest((FullHttpRequest) msg, reads));
+            reads = next(reads);
+        } else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (!(msg instanceof SequencedHttpResponse)) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        int sequence = ((SequencedHttpResponse) msg).sequence();
+        if (sequence != writes) {
+            if (pending.size() >= maxPending) {
+                if (log.isWarnEnabled())
+                    log.warn("{} holds more than {} pipelined responses, closed", ctx.channel(),
+                             maxPending);
+                ReferenceCountUtil.release(msg);
+                promise.tryFailure(new ClosedChannelException());
+                ctx.close();
+                return;
+            }
+            pending.put(sequence, new Pending(msg, promise));
+            return;
+        }
+
+        ctx.write(msg, promise);
+        writes = next(writes);
+        if (pending.isEmpty())
+            return;
+        for (Pending next = pending.remove(writes); null != next; next = pending.remove(writes)) {
+            ctx.write(next.msg, next.promise);
+            writes = next(writes);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        for (Pending held : pending.values()) {
+            ReferenceCountUtil.release(held.msg);
+            held.promise.tryFailure(new ClosedChannelException());
+        }
+        pending.clear();
+    }
+
+    private static int next(int sequence) {
+        return (sequence + 1) & Integer.MAX_VALUE;
+    }
+
+    @AllArgsConstructor
+    private static class Pending {
+        private final Object msg;
+        private final ChannelPromise promise;
+    }
+}
@@ -1,6 +1,7 @@
 package io.cantor.http;
 
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
@@ -37,8 +38,11 @@ public class HttpResponses {
     }
 
     private static FullHttpResponse error(HandlerRequest request, HttpResponseStatus status) {
-        FullHttpResponse resp = new DefaultFullHttpResponse(HttpVersion.valueOf(request.version()),
-                                                            status);
+        FullHttpResponse resp = SequencedHttpResponse.of(request,
+                                                         HttpVersion.valueOf(request.version()),
+                                                         status,
+                                                         Unpooled.buffer(0),
+                                                         true);
         String content = status.toString();
         resp.headers().set(HttpHeaderNames.CONTENT_LENGTH.toString(), content.length());
         ByteBufUtil.writeUtf8(resp.content(), content);
@@ -1,6 +1,10 @@
 package io.cantor.http;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
@@ -8,11 +12,13 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -20,10 +26,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class HttpServer {
 
+    static final int DEFAULT_FLUSH_BATCH = 16;
+    static final int DEFAULT_MAX_PIPELINED = 1024;
+
     private final HttpServerHandler handler;
 
+    private final int flushBatch;
+
+    private final int maxPipelined;
+
     private final ServerBootstrap bootstrap;
 
+    private final EventLoopGroup workers;
+
     private final ChannelGroup channelGroup;
 
     private final AtomicBoolean listen = new AtomicBoolean(false);
@@ -31,10 +46,28 @@ public class HttpServer {
     public HttpServer(@NonNull EventLoopGroup acceptors,
                       @NonNull EventLoopGroup workers,
                       @NonNull HttpServerHandler handler) {
+        this(acceptors, workers, handler, DEFAULT_FLUSH_BATCH, DEFAULT_MAX_PIPELINED);
+    }
+
+    /**
+     * @param flushBatch   the flushes of responses coalesced into a write to the socket, when
+     *                     they are not flushed by the end of a read already; 0 flushes every
+     *                     response at once
+     * @param maxPipelined the responses a connection may hold back for the ones of earlier
+     *                     pipelined requests before it is closed
+     */
+    public HttpServer(@NonNull EventLoopGroup acceptors,
+                      @NonNull EventLoopGroup workers,
+                      @NonNull HttpServerHandler handler,
+                      int flushBatch,
+                      int maxPipelined) {
         this.handler = handler;
+        this.flushBatch = flushBatch;
+        this.maxPipelined = maxPipelined;
         this.channelGroup = new DefaultChannelGroup("netserver-channels",
                                                     GlobalEventExecutor.INSTANCE);
         this.bootstrap = Bootstraps.serverBootstrap(acceptors, workers);
+        this.workers = workers;
     }
 
     public synchronized void bind(@NonNull String host, int port, Callback<Channel> callback) {
@@ -44,6 +77,11 @@ public class HttpServer {
         pipeline();
 
         try {
+            if (Bootstraps.epoll()) {
+                bindPerLoop(host, port, callback);
+                return;
+            }
+
             ChannelFuture channelFuture = bootstrap.bind(host, port);
             channelFuture.addListener(new NetServerListener(channelFuture.channel(),
                                                             callback,
@@ -61,12 +99,58 @@ public class HttpServer {
         }
     }
 
+    /**
+     * Binds a listener of the port on every I/O loop, by {@code SO_REUSEPORT}, so that the
+     * kernel balances the accepts among the loops and a connection stays on the loop which
+     * accepted it. The callback completes with the first listener once all of them are bound,
+     * or fails with the first failure.
+     */
+    private void bindPerLoop(String host, int port, Callback<Channel> callback) {
+        List<EventLoop> loops = new ArrayList<>();
+        workers.forEach(executor -> loops.add((EventLoop) executor));
+        AtomicInteger remaining = new AtomicInteger(loops.size());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<Channel> listeners = new CopyOnWriteArrayList<>();
+
+        for (EventLoop loop : loops) {
+            ChannelFuture channelFuture = Bootstraps.serverBootstrap(loop, loop)
+                                                    .childHandler(bootstrap.config().childHandler())
+                                                    .bind(host, port);
+            listeners.add(channelFuture.channel());
+            channelFuture.addListener(new NetServerListener(
+                    channelFuture.channel(),
+                    new Callback<Channel>() {
+                        @Override
+                        public void onComplete(Channel result) {
+                            if (failed.get())
+                                result.close();
+                            else if (0 == remaining.decrementAndGet())
+                                Callbacks.complete(callback, listeners.get(0));
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            if (failed.compareAndSet(false, true)) {
+                                listeners.forEach(Channel::close);
+                                listen.set(false);
+                                Callbacks.fail(callback, t);
+                            }
+                        }
+                    },
+                    channelGroup,
+                    channelFuture,
+                    host,
+                    port));
+        }
+    }
+
     private void pipeline() {
         bootstrap.childHandler(new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel ch) throws Exception {
                 ChannelPipeline pipeline = ch.pipeline();
 
+                pipeline.addLast("watch", WatchedChannelHandler.INSTANCE);
                 codec(pipeline);
 
                 pipeline.addLast("handler", handler);
@@ -122,13 +206,24 @@ public class HttpServer {
         }
     }
 
+    /**
+     * The flushes of the responses are held until the read of a batch of requests completes,
+     * or until {@code flushBatch} of them are pending, and a response written out of a read is
+     * flushed with the others written in the same run of the loop. The responses to pipelined
+     * requests are written in the order of the requests. Only the requests carrying a body are
+     * aggregated.
+     */
     protected void codec(ChannelPipeline pipeline) {
+        if (0 < flushBatch)
+            pipeline.addLast("flusher", new FlushConsolidationHandler(flushBatch, true));
         HttpRequestDecoder httpDecoder = new HttpRequestDecoder(4096,
                                                                 8192,
                                                                 8192,
                                                                 false);
         pipeline.addLast("decoder", httpDecoder)
                 .addLast("encoder", new BoundHttpResponseEncoder())
-                .addLast("aggregator", new HttpObjectAggregator(1048576));
+                .addLast("bodiless", new BodilessRequestHandler())
+                .addLast("aggregator", new HttpObjectAggregator(1048576))
+                .addLast("pipelining", new HttpPipeliningHandler(maxPipelined));
     }
 }
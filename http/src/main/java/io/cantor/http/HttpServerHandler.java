@@ -36,6 +36,12 @@ public abstract class HttpServerHandler extends ChannelDuplexHandler {
             if (HttpUtil.is100ContinueExpected(req))
                 ctx.writeAndFlush(new DefaultFullHttpResponse(req.protocolVersion(), CONTINUE));
 
+            if (req instanceof SequencedHttpRequest) {
+                // a copy made by the pipelining handler already
+                channelRead(ctx, req);
+                return;
+            }
+
             FullHttpRequest safeReq = new DefaultFullHttpRequest(req.protocolVersion(),
                                                                  req.method(),
                                                                  req.uri(),
@@ -0,0 +1,10 @@
+package io.cantor.http;
+
+/**
+ * A handler which never blocks, e.g. one which answers from memory or resumes from the callback
+ * of an asynchronous call, and is therefore run inline on the I/O loop of the channel.
+ */
+@FunctionalInterface
+public interface NonBlockingHandler<S extends AffinityScheduler, I, O>
+        extends AppRequestResponseHandler<S, I, O> {
+}
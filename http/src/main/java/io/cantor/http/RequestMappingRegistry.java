@@ -1,6 +1,7 @@
 package io.cantor.http;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeSet;
@@ -16,11 +17,23 @@ public class RequestMappingRegistry<S extends AffinityScheduler, I, O> {
     PathNode root = new PathNode(PathNode.WILDCARD);
     @Getter
     private final Map<String, String> apiDescriptor = new HashMap<>();
+    // the compiled routes, published together and replaced as a whole, so the I/O loops read
+    // them without a lock
+    private volatile Routes routes;
 
     public void registry(@NonNull HttpMethodKey method, @NonNull String path, AppRequestResponseHandler<S, I, O> handler) {
+        registry(method, path, handler, handler instanceof NonBlockingHandler);
+    }
+
+    /**
+     * @param inline whether the handler never blocks, so that it is run on the I/O loop
+     */
+    public synchronized void registry(@NonNull HttpMethodKey method, @NonNull String path, AppRequestResponseHandler<S, I, O> handler, boolean inline) {
         apiDescriptor.put(path, method.toString());
+        routes = null;
         if (path.equals("/") || path.equals("")) {
             root.actions.put(method, handler);
+            root.inline.put(method, inline);
             return;
         }
 
@@ -45,53 +58,130 @@ public class RequestMappingRegistry<S extends AffinityScheduler, I, O> {
             current = pathNode;
         }
         current.actions.put(method, handler);
+        current.inline.put(method, inline);
+    }
+
+    /**
+     * Compiles the registered paths into the routes matched by {@link #find(HandlerRequest)}:
+     * the paths without wildcards in a hash map of their exact path, the others in a trie whose
+     * children are looked up by hash. A path registered afterwards drops the routes, which are
+     * compiled again, once, on the next find.
+     */
+    public synchronized void compile() {
+        Map<String, Route> statics = new HashMap<>();
+        Route trie = compile(root, "", true, statics);
+        routes = new Routes(statics, trie);
+    }
+
+    private Routes routes() {
+        Routes compiled = routes;
+        if (null != compiled)
+            return compiled;
+        synchronized (this) {
+            if (null == routes)
+                compile();
+            return routes;
+        }
     }
 
     public PathMatcher find(HandlerRequest handlerRequest) {
         try {
-            HttpMethodKey method;
-            try {
-                method = HttpMethodKey.valueOf(handlerRequest.method().toUpperCase());
-            } catch (IllegalArgumentException illegal) {
-                log.debug("method not allowed", illegal);
+            HttpMethodKey method = HttpMethodKey.of(handlerRequest.method());
+            if (null == method) {
+                log.debug("method not allowed: {}", handlerRequest.method());
                 return PathMatcher.METHOD_UNMATCHED;
             }
-            String path = new URI(handlerRequest.uri()).getPath();
+            Routes compiled = routes();
 
-            if (path.equals("/") || path.equals("")) {
-                if (root.actions.isEmpty()) {
-                    return PathMatcher.RESOURCE_UNMATCHED;
-                }
-                if (!root.actions.containsKey(method)) {
-                    return PathMatcher.METHOD_UNMATCHED;
-                }
-                return PathMatcher.with(root.actions.get(method));
-            }
-
-            String[] segments = split(path);
-            PathNode current = root;
-            for (String segment : segments) {
-                PathNode pathNode = current.next(segment);
-                if (pathNode == null) {
-                    return PathMatcher.RESOURCE_UNMATCHED;
-                }
-                if (pathNode.getClass().equals(WildcardNode.class)) {
-                    handlerRequest.pathVariables(pathNode.path(), segment);
-                }
-                current = pathNode;
-            }
-            if (current.actions.isEmpty()) {
+            String path = strip(path(handlerRequest.uri()));
+            Route route = compiled.statics.get(path);
+            if (null == route)
+                route = walk(compiled.trie, path, handlerRequest);
+            if (null == route)
                 return PathMatcher.RESOURCE_UNMATCHED;
-            }
-            if (!current.actions.containsKey(method)) {
-                return PathMatcher.METHOD_UNMATCHED;
-            }
-            return PathMatcher.with(current.actions.get(method));
+
+            PathMatcher matcher = route.matchers[method.ordinal()];
+            return null == matcher ? PathMatcher.METHOD_UNMATCHED : matcher;
         } catch (Exception e) {
             return PathMatcher.ERROR;
         }
     }
 
+    private Route compile(PathNode node, String path, boolean exact, Map<String, Route> statics) {
+        Route route = new Route(node.path());
+        node.actions.forEach((method, handler) -> route.matchers[method.ordinal()] =
+                PathMatcher.with(handler, node.inline.getOrDefault(method, false)));
+        route.routable = !node.actions.isEmpty();
+        if (exact && route.routable)
+            statics.put(path, route);
+
+        for (PathNode child : node.children) {
+            boolean wildcard = WildcardNode.class.equals(child.getClass());
+            String childPath = path.isEmpty() ? child.path() : path + "/" + child.path();
+            Route compiled = compile(child, childPath, exact && !wildcard, statics);
+            if (wildcard)
+                route.wildcard = compiled;
+            else
+                route.children.put(child.path(), compiled);
+        }
+        return route;
+    }
+
+    /**
+     * Walks the trie the way the path nodes were matched, where a static child is preferred to
+     * the wildcard one and no other branch is tried once a segment has matched.
+     */
+    private Route walk(Route route, String path, HandlerRequest handlerRequest) {
+        int start = 0;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = path.length();
+            String segment = path.substring(start, end);
+            Route next = route.children.get(segment);
+            if (null == next) {
+                next = route.wildcard;
+                if (null == next)
+                    return null;
+                handlerRequest.pathVariables(next.path, segment);
+            }
+            route = next;
+            start = end + 1;
+        }
+        return route.routable ? route : null;
+    }
+
+    /**
+     * @return the path of the uri, which is decoded by {@link URI} only if it is escaped
+     */
+    private static String path(String uri) throws URISyntaxException {
+        if (uri.indexOf('%') >= 0)
+            return new URI(uri).getPath();
+
+        int start = 0;
+        int scheme = uri.indexOf("://");
+        if (scheme > 0 && scheme < uri.indexOf('/')) {
+            start = uri.indexOf('/', scheme + 3);
+            if (start < 0)
+                return "";
+        }
+        int end = uri.length();
+        for (int i = start; i < end; i++) {
+            char c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        return uri.substring(start, end);
+    }
+
+    private static String strip(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.length() > start && path.endsWith("/") ? path.length() - 1 : path.length();
+        return path.substring(start, end);
+    }
+
     private boolean isWildcard(String segment) {
         return segment.matches("^\\{.*\\}$");
     }
@@ -112,6 +202,7 @@ public class RequestMappingRegistry<S extends AffinityScheduler, I, O> {
         TreeSet<PathNode> children = new TreeSet<>();
         String path = WILDCARD;
         Map<HttpMethodKey, AppRequestResponseHandler> actions = new HashMap<>();
+        Map<HttpMethodKey, Boolean> inline = new HashMap<>();
 
         PathNode(String path) {
             this.path = path;
@@ -167,8 +258,49 @@ public class RequestMappingRegistry<S extends AffinityScheduler, I, O> {
         }
     }
 
+    /**
+     * The paths without wildcards by their exact path, and the trie of all the paths.
+     */
+    private static class Routes {
+        final Map<String, Route> statics;
+        final Route trie;
+
+        Routes(Map<String, Route> statics, Route trie) {
+            this.statics = statics;
+            this.trie = trie;
+        }
+    }
+
+    static class Route {
+        final String path;
+        final Map<String, Route> children = new HashMap<>();
+        final PathMatcher[] matchers = new PathMatcher[HttpMethodKey.values().length];
+        Route wildcard;
+        boolean routable;
+
+        Route(String path) {
+            this.path = path;
+        }
+    }
+
     public enum HttpMethodKey {
         GET, POST, PUT, DELETE;
+
+        private static final Map<String, HttpMethodKey> NAMES = new HashMap<>();
+
+        static {
+            for (HttpMethodKey key : values())
+                NAMES.put(key.name(), key);
+        }
+
+        /**
+         * @return the key of the method name, which is compared case-insensitively, or null if
+         * the method is not supported
+         */
+        static HttpMethodKey of(String method) {
+            HttpMethodKey key = NAMES.get(method);
+            return null != key ? key : NAMES.get(method.toUpperCase());
+        }
     }
 
     @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -176,6 +308,7 @@ public class RequestMappingRegistry<S extends AffinityScheduler, I, O> {
         @Getter
         private AppRequestResponseHandler serverHandler;
         private int unmatched = 0; // -1 error, 0 matched, 1 resource unmatched, 2 method unmatched
+        private boolean inline;
         private final static PathMatcher METHOD_UNMATCHED;
         private final static PathMatcher RESOURCE_UNMATCHED;
         private final static PathMatcher ERROR;
@@ -192,12 +325,13 @@ public class RequestMappingRegistry<S extends AffinityScheduler, I, O> {
             ERROR = error;
         }
 
-        private static PathMatcher with(AppRequestResponseHandler serverHandler) {
+        private static PathMatcher with(AppRequestResponseHandler serverHandler, boolean inline) {
             if (serverHandler == null) {
                 return RESOURCE_UNMATCHED;
             }
             PathMatcher pm = new PathMatcher();
             pm.serverHandler = serverHandler;
+            pm.inline = inline;
             return pm;
         }
 
@@ -216,5 +350,12 @@ public class RequestMappingRegistry<S extends AffinityScheduler, I, O> {
         public boolean error() {
             return unmatched == -1;
         }
+
+        /**
+         * @return true if the matched handler never blocks
+         */
+        public boolean inline() {
+            return inline;
+        }
     }
 }
\ No newline at end of file
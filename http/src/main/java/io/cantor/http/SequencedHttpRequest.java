@@ -0,0 +1,46 @@
+package io.cantor.http;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A request numbered by the {@link HttpPipeliningHandler} in the order it is read from its
+ * connection, which shares the content and headers of the decoded request.
+ */
+class SequencedHttpRequest extends DefaultFullHttpRequest {
+
+    @Getter
+    @Setter(AccessLevel.PACKAGE)
+    private int sequence;
+
+    /**
+     * A request without a body, which is numbered once it reaches the pipelining handler.
+     */
+    SequencedHttpRequest(HttpRequest request) {
+        super(request.protocolVersion(),
+              request.method(),
+              request.uri(),
+              Unpooled.EMPTY_BUFFER,
+              request.headers(),
+              EmptyHttpHeaders.INSTANCE);
+        setDecoderResult(request.decoderResult());
+        this.sequence = HttpPipeliningHandler.UNSEQUENCED;
+    }
+
+    SequencedHttpRequest(FullHttpRequest request, int sequence) {
+        super(request.protocolVersion(),
+              request.method(),
+              request.uri(),
+              request.content(),
+              request.headers(),
+              request.trailingHeaders());
+        setDecoderResult(request.decoderResult());
+        this.sequence = sequence;
+    }
+}
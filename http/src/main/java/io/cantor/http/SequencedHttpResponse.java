@@ -0,0 +1,37 @@
+package io.cantor.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import lombok.Getter;
+
+/**
+ * The response to a {@link SequencedHttpRequest}, which the {@link HttpPipeliningHandler} holds
+ * back until the responses to the requests read before it are written.
+ */
+class SequencedHttpResponse extends DefaultFullHttpResponse {
+
+    @Getter
+    private final int sequence;
+
+    private SequencedHttpResponse(HttpVersion version, HttpResponseStatus status, ByteBuf content,
+                                  boolean validateHeaders, int sequence) {
+        super(version, status, content, validateHeaders);
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return a response in the sequence of the request, or a plain one if the request is not
+     * sequenced
+     */
+    static FullHttpResponse of(HandlerRequest request, HttpVersion version,
+                               HttpResponseStatus status, ByteBuf content,
+                               boolean validateHeaders) {
+        int sequence = request.sequence();
+        return HttpPipeliningHandler.UNSEQUENCED == sequence
+               ? new DefaultFullHttpResponse(version, status, content, validateHeaders)
+               : new SequencedHttpResponse(version, status, content, validateHeaders, sequence);
+    }
+}
@@ -1,5 +1,9 @@
 package io.cantor.http;
 
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -9,7 +13,8 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
-import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import lombok.NonNull;
@@ -17,14 +22,46 @@ import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class Server extends HttpServerHandler {
+    private static final AttributeKey<AffinityScheduler> SCHEDULER =
+            AttributeKey.valueOf("cantor.scheduler");
+    private static final String FLUSH_BATCH = "http.flush.batch";
+    private static final String MAX_PIPELINED = "http.pipelining.max.pending";
+
     private TrafficDispatcher dispatcher;
     private HttpServer server;
     private Application application;
 
     public Server(@NonNull Application application) {
+        this(application, ConfigFactory.empty());
+    }
+
+    /**
+     * @param config the settings of the event loops, e.g. {@code compute.wait.strategy}, and of
+     *               the connections, e.g. {@code http.flush.batch}
+     */
+    public Server(@NonNull Application application, @NonNull Config config) {
         this.application = application;
-        dispatcher = new TrafficDispatcher();
-        server = new HttpServer(dispatcher.acceptors(), dispatcher.workers(), this);
+        dispatcher = new TrafficDispatcher(config);
+        int flushBatch = config.hasPath(FLUSH_BATCH) ? config.getInt(FLUSH_BATCH)
+                                                     : HttpServer.DEFAULT_FLUSH_BATCH;
+        int maxPipelined = config.hasPath(MAX_PIPELINED) ? config.getInt(MAX_PIPELINED)
+                                                         : HttpServer.DEFAULT_MAX_PIPELINED;
+        server = new HttpServer(dispatcher.acceptors(), dispatcher.workers(), this, flushBatch,
+                                maxPipelined);
+    }
+
+    /**
+     * @return the idle time and wakeup latency of the compute loops
+     */
+    public ComputeEventLoopMetrics computeMetrics() {
+        return ((ComputeEventLoopGroup) dispatcher.executors()).metrics();
+    }
+
+    /**
+     * @return the tasks timed on every I/O and compute loop
+     */
+    public List<EventLoopMetrics> loopMetrics() {
+        return dispatcher.loopMetrics();
     }
 
     public void startup(int port) {
@@ -54,68 +91,102 @@ public class Server extends HttpServerHandler {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, FullHttpRequest request) {
+        // the request is released once its response is written
         HandlerRequest handlerRequest = new HandlerRequest(request, ctx.channel());
-        ReferenceCountUtil.release(request);
 
         if (request.decoderResult().isFailure()) {
+            handlerRequest.release();
             ctx.writeAndFlush(HttpResponses.badRequest(handlerRequest));
             return;
         }
 
-        AffinityScheduler schd = dispatcher.assign(ctx.channel().eventLoop());
+        AffinityScheduler schd = scheduler(ctx.channel());
+
+        if (application.inline(handlerRequest)) {
+            // a non-blocking handler runs on the I/O loop, without handing the request over
+            handle(ctx, schd, handlerRequest);
+            return;
+        }
 
         try {
-            schd.compute(() -> {
-
-                Channel channel = ctx.channel();
-
-                TriConsumer<FullHttpResponse, Runnable, Consumer<Throwable>> writer =
-                        (resp, completer, catcher) -> {
-                            GenericFutureListener<Future<? super Void>> completeListener = (future) -> {
-                                if (future.isSuccess()) {
-                                    if (completer != null)
-                                        completer.run();
-                                } else {
-                                    Throwable cause = future.cause();
-                                    if (log.isErrorEnabled()) {
-                                        log.error("flush outbound data error", cause);
-                                    }
-                                    if (catcher != null) {
-                                        catcher.accept(cause);
-                                    }
-                                }
-                            };
-
-                            if (channel.eventLoop().inEventLoop()) {
-                                ctx.writeAndFlush(resp).addListener(completeListener);
-                            } else {
-                                channel.eventLoop().execute(
-                                        () -> {
-                                            ctx.writeAndFlush(resp).addListener(completeListener);
-                                        });
-                            }
-                        };
-
-                HandlerResponse handlerResponse = new HandlerResponse(handlerRequest,
-                                                                      schd,
-                                                                      writer);
-
-                try {
-                    application.handle(schd, handlerRequest, handlerResponse);
-                } catch (Exception e) {
-                    if (log.isErrorEnabled())
-                        log.error("handle request failed", e);
-
-                    schd.io(() -> {
-                        ctx.writeAndFlush(HttpResponses.internalServerError(handlerRequest));
-                    });
-                }
-            });
+            schd.compute(() -> handle(ctx, schd, handlerRequest));
         } catch (final RejectedExecutionException e) {
             if (log.isErrorEnabled())
                 log.error("execution queue rejected", e);
 
+            handlerRequest.release();
             ctx.writeAndFlush(HttpResponses.internalServerError(handlerRequest));
         }
     }
+
+    /**
+     * @return the scheduler of the channel, which is assigned on its first request so that
+     * the requests of a connection are handled on the same compute loop
+     */
+    private AffinityScheduler scheduler(Channel channel) {
+        // only read and set on the event loop of the channel
+        Attribute<AffinityScheduler> attribute = channel.attr(SCHEDULER);
+        AffinityScheduler scheduler = attribute.get();
+        if (null == scheduler) {
+            scheduler = dispatcher.assign(channel.eventLoop());
+            attribute.set(scheduler);
+        }
+        return scheduler;
+    }
+
+    private void handle(ChannelHandlerContext ctx, AffinityScheduler schd,
+                        HandlerRequest handlerRequest) {
+        Channel channel = ctx.channel();
+
+        TriConsumer<FullHttpResponse, Runnable, Consumer<Throwable>> writer =
+                (resp, completer, catcher) -> {
+                    handlerRequest.release();
+                    GenericFutureListener<Future<? super Void>> completeListener = (future) -> {
+                        if (future.isSuccess()) {
+                            if (completer != null)
+                                completer.run();
+                        } else {
+                            Throwable cause = future.cause();
+                            if (log.isErrorEnabled()) {
+                                log.error("flush outbound data error", cause);
+                            }
+                            if (catcher != null) {
+                                catcher.accept(cause);
+                            }
+                        }
+                    };
+
+                    if (channel.eventLoop().inEventLoop()) {
+                        ctx.writeAndFlush(resp).addListener(completeListener);
+                    } else {
+                        channel.eventLoop().execute(WatchedThread.watched(
+                                () -> {
+                                    ctx.writeAndFlush(resp).addListener(completeListener);
+                                }));
+                    }
+                };
+
+        HandlerResponse handlerResponse = new HandlerResponse(handlerRequest,
+                                                              schd,
+                                                              PooledDirectByteBufAllocator.INSTANCE,
+                                                              writer);
+
+        // the handler is timed as a part of the task of the loop, which it describes meanwhile
+        WatchedThread watched = Threads.current(WatchedThread.class);
+        Object enclosing = null == watched ? null : watched.watch(handlerRequest);
+        try {
+            application.handle(schd, handlerRequest, handlerResponse);
+        } catch (Exception e) {
+            if (log.isErrorEnabled())
+                log.error("handle request failed", e);
+
+            handlerRequest.release();
+            schd.io(() -> {
+                ctx.writeAndFlush(HttpResponses.internalServerError(handlerRequest));
+            });
+        } finally {
+            if (null != watched)
+                watched.stopWatch(enclosing);
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package io.cantor.http;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Samples the watched loops periodically, and reports the task of a loop which has been running
+ * for longer than the watch duration of the loop, with the stack of the loop while it is still
+ * stalled. A stalled task is reported once, no matter how many samples see it.
+ * <p>
+ * The loops only pay for two timestamps per task, the stack is taken by the sampler. The tasks
+ * are timed as the loops run them: every task of a compute loop, and on an I/O loop the events
+ * of its channels and the tasks handed over to it from other threads.
+ */
+@Slf4j
+class StallDetector {
+
+    private static final String THREAD_NAME = "traffic-stall-detector";
+    private static final long MIN_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<WatchedThread> threads = new CopyOnWriteArrayList<>();
+    // the start of the task last reported of every thread, only accessed by the sampler
+    private final Map<WatchedThread, Long> reported = new WeakHashMap<>();
+    private final ScheduledExecutorService sampler;
+
+    /**
+     * @param periodNanos the period of the samples, a half of the watch duration catches every
+     *                    stall
+     */
+    StallDetector(long periodNanos) {
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(periodNanos, MIN_PERIOD_NANOS);
+        sampler.scheduleWithFixedDelay(this::sample, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    void watch(WatchedThread thread) {
+        threads.add(thread);
+    }
+
+    private void sample() {
+        try {
+            sampleAll();
+        } catch (RuntimeException e) {
+            // an exception would cancel the samples to come
+            if (log.isWarnEnabled())
+                log.warn("sample the watched loops failed", e);
+        }
+    }
+
+    private void sampleAll() {
+        for (WatchedThread thread : threads) {
+            long started = thread.started();
+            Object task = thread.task();
+            // the task is the one of the start only if the start is still the same after it
+            if (0 == started || null == task || started != thread.started())
+                continue;
+            long elapse = System.nanoTime() - started;
+            if (elapse <= thread.maxDuration())
+                continue;
+            Long last = reported.put(thread, started);
+            if (null != last && last == started)
+                continue;
+
+            if (log.isWarnEnabled())
+                log.warn("{} has been running {} for {}us{}", thread.getName(), describe(task),
+                         TimeUnit.NANOSECONDS.toMicros(elapse),
+                         stack(thread.getStackTrace()));
+        }
+    }
+
+    static String describe(Object task) {
+        if (task instanceof HandlerRequest)
+            return ((HandlerRequest) task).describe();
+        if (task instanceof Channel)
+            return "the events of " + task;
+        return task.getClass().getName();
+    }
+
+    private static String stack(StackTraceElement[] elements) {
+        StringBuilder stack = new StringBuilder();
+        for (StackTraceElement element : elements)
+            stack.append(System.lineSeparator()).append("\tat ").append(element);
+        return stack.toString();
+    }
+}
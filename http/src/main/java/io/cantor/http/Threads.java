@@ -23,6 +23,15 @@ public class Threads {
         return t;
     }
 
+    /**
+     * @return the index of the current I/O or compute loop, unique among the loops of the
+     * dispatcher, or -1 if the current thread is not a loop
+     */
+    public static int loopIndex() {
+        WatchedThread t = current(WatchedThread.class);
+        return null == t ? -1 : t.loopIndex();
+    }
+
     public static ClassLoader contextLoader() {
         return Thread.currentThread().getContextClassLoader();
     }
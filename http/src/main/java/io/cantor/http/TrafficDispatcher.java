@@ -1,12 +1,61 @@
 package io.cantor.http;
 
+import com.typesafe.config.Config;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Creates the acceptor, I/O and compute loops, sized from the available processors unless
+ * configured, and pairs every I/O loop with a fixed share of the compute loops, from which the
+ * scheduler of a channel is assigned. With {@code dispatcher.affinity.enabled} every I/O and
+ * compute loop is pinned to a processor of its own, and an I/O loop is paired with the compute
+ * loops of its cache domain. Pinning needs {@code taskset} of util-linux on the PATH, without it
+ * the loops are paired as if the affinity was disabled.
+ * <p>
+ * The tasks run on the I/O and compute loops are timed, a task which runs for longer than
+ * {@code dispatcher.watch.max.duration.us} is reported as a stall of its loop.
+ */
+@Slf4j
 public class TrafficDispatcher {
 
+    private static final String ACCEPTOR_THREADS = "dispatcher.acceptor.threads";
+    private static final String ACCEPTOR_IO_RATIO = "dispatcher.acceptor.io.ratio";
+    private static final String IO_THREADS = "dispatcher.io.threads";
+    private static final String IO_RATIO = "dispatcher.io.ratio";
+    private static final String COMPUTE_THREADS = "dispatcher.compute.threads";
+    private static final String COMPUTE_QUEUE_SIZE = "dispatcher.compute.queue.size";
+    private static final String AFFINITY_ENABLED = "dispatcher.affinity.enabled";
+    private static final int DEFAULT_ACCEPTOR_THREADS = 1;
+    private static final int DEFAULT_ACCEPTOR_IO_RATIO = 100;
+    private static final int DEFAULT_IO_RATIO = 50;
+    private static final int DEFAULT_COMPUTE_QUEUE_SIZE = 64;
+    private static final String WATCH_MAX_DURATION = "dispatcher.watch.max.duration.us";
+    private static final long DEFAULT_WATCH_MAX_DURATION = 5000L;
+
+    private static final String WAIT_STRATEGY = "compute.wait.strategy";
+    private static final String WAIT_SPINS = "compute.wait.spins";
+    private static final String WAIT_YIELDS = "compute.wait.yields";
+    private static final String WAIT_PARK_MAX = "compute.wait.park.max.us";
+    private static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.BACKOFF;
+    private static final int DEFAULT_WAIT_SPINS = 100;
+    private static final int DEFAULT_WAIT_YIELDS = 10;
+    private static final long DEFAULT_WAIT_PARK_MAX = 1000L;
+
     @Getter
     private final EventLoopGroup workers;
 
@@ -16,31 +65,194 @@ public class TrafficDispatcher {
     @Getter
     private final EventLoopGroup executors;
 
-    TrafficDispatcher() {
-        acceptors = new NioEventLoopGroup(1,
-                                          new WatchedThreadFactory(String.format("%s-%s",
-                                                                                   "traffic",
-                                                                                   "accept"),
-                                                                     ThreadPattern.IO_LOOP,
-                                                                     5000));
+    // the compute loops of every I/O loop, which are the ones of its cache domain if pinned
+    private final Map<EventExecutor, EventLoop[]> pairs = new IdentityHashMap<>();
+    private final Map<EventExecutor, AtomicInteger> pairCursors = new IdentityHashMap<>();
+
+    @Getter
+    private final List<EventLoopMetrics> loopMetrics = new ArrayList<>();
+
+    private final StallDetector stallDetector;
 
-        NioEventLoopGroup.class.cast(acceptors).setIoRatio(100);
+    // only the first loop failing to pin is reported
+    private final AtomicBoolean pinFailed = new AtomicBoolean();
 
-        workers = new NioEventLoopGroup(8,
-                                        new WatchedThreadFactory(String.format("%s-%s",
-                                                                               "traffic",
-                                                                               "io"),
-                                                                 ThreadPattern.IO_LOOP,
-                                                                 5000));
-        NioEventLoopGroup.class.cast(workers).setIoRatio(50);
+    TrafficDispatcher(Config config) {
+        CpuTopology topology = CpuTopology.detect();
+        int cpus = topology.cpus();
+        boolean affinity = config.hasPath(AFFINITY_ENABLED) && config.getBoolean(AFFINITY_ENABLED);
+        // pinned loops should leave a processor to each other, so they share the processors
+        int ioThreads = config.hasPath(IO_THREADS) ? config.getInt(IO_THREADS)
+                                                   : Math.max(1, cpus / (affinity ? 3 : 2));
+        int computeThreads = config.hasPath(COMPUTE_THREADS)
+                ? config.getInt(COMPUTE_THREADS)
+                : affinity ? Math.max(1, cpus - ioThreads) : cpus;
+        int acceptorThreads = config.hasPath(ACCEPTOR_THREADS) ? config.getInt(ACCEPTOR_THREADS)
+                                                               : DEFAULT_ACCEPTOR_THREADS;
+        int acceptorIoRatio = config.hasPath(ACCEPTOR_IO_RATIO) ? config.getInt(
+                ACCEPTOR_IO_RATIO) : DEFAULT_ACCEPTOR_IO_RATIO;
+        int ioRatio = config.hasPath(IO_RATIO) ? config.getInt(IO_RATIO) : DEFAULT_IO_RATIO;
+        int queueSize = config.hasPath(COMPUTE_QUEUE_SIZE) ? config.getInt(COMPUTE_QUEUE_SIZE)
+                                                           : DEFAULT_COMPUTE_QUEUE_SIZE;
+        long maxDuration = TimeUnit.MICROSECONDS.toNanos(
+                config.hasPath(WATCH_MAX_DURATION) ? config.getLong(WATCH_MAX_DURATION)
+                                                   : DEFAULT_WATCH_MAX_DURATION);
 
-        executors = new ComputeEventLoopGroup(16,
+        acceptors = Bootstraps.eventLoopGroup(acceptorThreads,
+                                              new WatchedThreadFactory(String.format("%s-%s",
+                                                                                     "traffic",
+                                                                                     "accept"),
+                                                                       ThreadPattern.IO_LOOP,
+                                                                       maxDuration),
+                                              acceptorIoRatio);
+
+        workers = Bootstraps.eventLoopGroup(ioThreads,
+                                            new WatchedThreadFactory(String.format("%s-%s",
+                                                                                   "traffic",
+                                                                                   "io"),
+                                                                     ThreadPattern.IO_LOOP,
+                                                                     maxDuration),
+                                            ioRatio);
+
+        WaitStrategy strategy = config.hasPath(WAIT_STRATEGY) ? WaitStrategy.of(
+                config.getString(WAIT_STRATEGY)) : DEFAULT_WAIT_STRATEGY;
+        int spins = config.hasPath(WAIT_SPINS) ? config.getInt(WAIT_SPINS) : DEFAULT_WAIT_SPINS;
+        int yields = config.hasPath(WAIT_YIELDS) ? config.getInt(WAIT_YIELDS)
+                                                 : DEFAULT_WAIT_YIELDS;
+        long maxPark = config.hasPath(WAIT_PARK_MAX) ? config.getLong(WAIT_PARK_MAX)
+                                                     : DEFAULT_WAIT_PARK_MAX;
+        executors = new ComputeEventLoopGroup(computeThreads,
                                               new WatchedThreadFactory(String.format("%s-%s",
                                                                                      "traffic",
                                                                                      "exec"),
                                                                        ThreadPattern.IO_LOOP,
-                                                                       5000),
-                                              64);
+                                                                       maxDuration),
+                                              queueSize,
+                                              strategy,
+                                              spins,
+                                              yields,
+                                              TimeUnit.MICROSECONDS.toNanos(maxPark));
+
+        if (log.isInfoEnabled())
+            log.info("{} cpus in {} domains, {} acceptor, {} io and {} compute loops",
+                     cpus, topology.domains().size(), acceptorThreads, ioThreads,
+                     computeThreads);
+        if (!affinity || !pin(topology, ioThreads, computeThreads))
+            pair();
+
+        stallDetector = new StallDetector(maxDuration / 2);
+        watch("io", workers);
+        watch("compute", executors);
+    }
+
+    /**
+     * Times the tasks run on every loop of the group, by the metrics of the loop and the
+     * stall detector.
+     */
+    private void watch(String kind, EventLoopGroup group) {
+        int index = 0;
+        for (EventExecutor loop : group) {
+            EventLoopMetrics metrics = new EventLoopMetrics(kind + "-" + index++, loop);
+            int loopIndex = loopMetrics.size();
+            loopMetrics.add(metrics);
+            loop.execute(() -> {
+                WatchedThread thread = Threads.verify(WatchedThread.class);
+                thread.metrics(metrics);
+                thread.loopIndex(loopIndex);
+                stallDetector.watch(thread);
+            });
+        }
+    }
+
+    /**
+     * Pairs every I/O loop with a fixed share of the compute loops: the ones whose index is
+     * congruent to its own, or a single one if there are fewer compute loops than I/O ones.
+     */
+    private void pair() {
+        List<EventLoop> ioLoops = loops(workers);
+        List<EventLoop> computeLoops = loops(executors);
+        for (int i = 0; i < ioLoops.size(); i++) {
+            List<EventLoop> paired = new ArrayList<>();
+            if (computeLoops.size() < ioLoops.size()) {
+                paired.add(computeLoops.get(i % computeLoops.size()));
+            } else {
+                for (int j = i; j < computeLoops.size(); j += ioLoops.size())
+                    paired.add(computeLoops.get(j));
+            }
+            pairs.put(ioLoops.get(i), paired.toArray(new EventLoop[0]));
+            pairCursors.put(ioLoops.get(i), new AtomicInteger());
+        }
+    }
+
+    private static List<EventLoop> loops(EventLoopGroup group) {
+        List<EventLoop> loops = new ArrayList<>();
+        for (EventExecutor loop : group)
+            loops.add((EventLoop) loop);
+        return loops;
+    }
+
+    /**
+     * @return true if the loops are pinned and paired by their cache domains
+     */
+    private boolean pin(CpuTopology topology, int ioThreads, int computeThreads) {
+        CpuTopology.Layout layout = topology.layout(ioThreads, computeThreads);
+        if (null == layout) {
+            if (log.isWarnEnabled())
+                log.warn("{} io and {} compute loops are more than the {} cpus, not pinned",
+                         ioThreads, computeThreads, topology.cpus());
+            return false;
+        }
+
+        Path taskset = CpuTopology.taskset();
+        if (null == taskset) {
+            if (log.isWarnEnabled())
+                log.warn("{} is enabled but taskset or /proc/thread-self is missing, not pinned",
+                         AFFINITY_ENABLED);
+            return false;
+        }
+
+        List<EventLoop> computeLoops = new ArrayList<>();
+        int index = 0;
+        for (EventExecutor loop : executors) {
+            int cpu = layout.computeCpus[index++];
+            loop.execute(() -> pinned(taskset, cpu));
+            computeLoops.add((EventLoop) loop);
+        }
+
+        // the compute loops of a domain without I/O loops are shared by all the I/O loops
+        Set<Integer> ioDomains = new HashSet<>();
+        for (int domain : layout.ioDomains)
+            ioDomains.add(domain);
+
+        index = 0;
+        for (EventExecutor loop : workers) {
+            int cpu = layout.ioCpus[index];
+            int domain = layout.ioDomains[index++];
+            loop.execute(() -> pinned(taskset, cpu));
+
+            List<EventLoop> paired = new ArrayList<>();
+            for (int i = 0; i < computeLoops.size(); i++) {
+                if (layout.computeDomains[i] == domain
+                        || !ioDomains.contains(layout.computeDomains[i]))
+                    paired.add(computeLoops.get(i));
+            }
+            if (!paired.isEmpty()) {
+                pairs.put(loop, paired.toArray(new EventLoop[0]));
+                pairCursors.put(loop, new AtomicInteger());
+            }
+        }
+        return true;
+    }
+
+    private void pinned(Path taskset, int cpu) {
+        if (CpuTopology.pin(taskset, cpu)) {
+            if (log.isInfoEnabled())
+                log.info("{} pinned to cpu {}", Thread.currentThread().getName(), cpu);
+        } else if (pinFailed.compareAndSet(false, true)) {
+            if (log.isWarnEnabled())
+                log.warn("{} failed to pin to cpu {} by {}, the loops may be left unpinned",
+                         Thread.currentThread().getName(), cpu, taskset);
+        }
     }
 
     public AffinityScheduler assign() {
@@ -52,7 +264,19 @@ public class TrafficDispatcher {
                                 .contextLoader(Threads.contextLoader())
                                 .acceptor(acceptors.next())
                                 .worker(ioWorker)
-                                .executors(executors)
+                                .executors(executors(ioWorker))
                                 .build();
     }
+
+    /**
+     * @return the next of the compute loops paired with the I/O loop, or all of them if it is
+     * not one of the I/O loops
+     */
+    private EventLoopGroup executors(EventLoop ioWorker) {
+        EventLoop[] paired = pairs.get(ioWorker);
+        if (null == paired)
+            return executors;
+        return paired[(pairCursors.get(ioWorker).getAndIncrement() & Integer.MAX_VALUE) %
+                      paired.length];
+    }
 }
@@ -0,0 +1,32 @@
+package io.cantor.http;
+
+/**
+ * How an idle {@link ComputeEventLoop} waits for its next task, configured by {@code
+ * compute.wait.strategy}.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Polls the queue without pausing, for the lowest latency at the cost of a busy core per
+     * loop.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spins, then yields, then parks for a doubling time up to a maximum, and is unparked as
+     * soon as a task is submitted.
+     */
+    BACKOFF,
+
+    /**
+     * Parks until a task is submitted or a scheduled task is due.
+     */
+    BLOCKING;
+
+    /**
+     * @param name the name of the strategy, in any case and with either '-' or '_'
+     */
+    public static WaitStrategy of(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
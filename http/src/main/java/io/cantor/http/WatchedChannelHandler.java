@@ -0,0 +1,55 @@
+package io.cantor.http;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Times the events of a channel on its I/O loop as tasks of the loop: the read of every message
+ * through the pipeline, the end of a read and the flushes, so that a handler blocking the loop
+ * is recorded and reported like any other task. It goes first in the pipeline.
+ */
+@ChannelHandler.Sharable
+class WatchedChannelHandler extends ChannelDuplexHandler {
+
+    static final WatchedChannelHandler INSTANCE = new WatchedChannelHandler();
+
+    private WatchedChannelHandler() {
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        WatchedThread watched = Threads.current(WatchedThread.class);
+        Object enclosing = null == watched ? null : watched.watch(ctx.channel());
+        try {
+            ctx.fireChannelRead(msg);
+        } finally {
+            if (null != watched)
+                watched.stopWatch(enclosing);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        WatchedThread watched = Threads.current(WatchedThread.class);
+        Object enclosing = null == watched ? null : watched.watch(ctx.channel());
+        try {
+            ctx.fireChannelReadComplete();
+        } finally {
+            if (null != watched)
+                watched.stopWatch(enclosing);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        WatchedThread watched = Threads.current(WatchedThread.class);
+        Object enclosing = null == watched ? null : watched.watch(ctx.channel());
+        try {
+            ctx.flush();
+        } finally {
+            if (null != watched)
+                watched.stopWatch(enclosing);
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package io.cantor.http;
 
+import java.util.concurrent.TimeUnit;
+
 import io.netty.util.concurrent.FastThreadLocalThread;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @ToString(callSuper = true)
 @Getter
 class WatchedThread extends FastThreadLocalThread {
 
-    private long started;
+    // the start of the task being watched, 0 if none; set after the task and cleared before it,
+    // so that a reader seeing the same start before and after reading the task has its task
+    private volatile long started;
+
+    // the innermost task being watched
+    private volatile Object task;
 
-    private long maxDuration;
+    // nanoseconds a task may run before it counts as a stall
+    private final long maxDuration;
 
     @Getter
     private final ThreadPattern pattern;
@@ -20,6 +31,13 @@ class WatchedThread extends FastThreadLocalThread {
     @Setter
     private AffinityScheduler scheduler;
 
+    @Setter(AccessLevel.PACKAGE)
+    private EventLoopMetrics metrics;
+
+    // the index of the loop among all the I/O and compute loops, -1 until it is watched
+    @Setter(AccessLevel.PACKAGE)
+    private volatile int loopIndex = -1;
+
     WatchedThread(@NonNull ThreadGroup threadGroup, @NonNull Runnable target, @NonNull WatchedThreadFactory factory) {
         super(threadGroup,
               target,
@@ -28,17 +46,64 @@ class WatchedThread extends FastThreadLocalThread {
         this.pattern = factory.pattern();
     }
 
-    final void watch() {
+    /**
+     * Wraps the task submitted to a loop from outside of it, so that it is timed as a task of its
+     * own when the loop runs it.
+     */
+    static Runnable watched(@NonNull Runnable task) {
+        return () -> {
+            WatchedThread thread = Threads.current(WatchedThread.class);
+            Object enclosing = null == thread ? null : thread.watch(task);
+            try {
+                task.run();
+            } finally {
+                if (null != thread)
+                    thread.stopWatch(enclosing);
+            }
+        };
+    }
+
+    /**
+     * Starts to time the task, which is described by the {@link StallDetector} if it stalls. A
+     * task run within another one which is timed already is timed as a part of it, and only
+     * describes it until it ends.
+     *
+     * @return the enclosing task, or null if there is none; to be passed to {@link #stopWatch}
+     */
+    final Object watch(@NonNull Object task) {
+        if (0 != started) {
+            Object enclosing = this.task;
+            this.task = task;
+            return enclosing;
+        }
+        this.task = task;
         started = System.nanoTime();
+        return null;
     }
 
-    final long stopWatch() {
+    /**
+     * Stops to time the task and records it in the metrics of the loop, or describes the
+     * enclosing task again if the task is a part of it.
+     */
+    final void stopWatch(Object enclosing) {
+        if (null != enclosing) {
+            task = enclosing;
+            return;
+        }
+
         long elapse = System.nanoTime() - started;
+        Object watched = task;
         started = 0;
-        return elapse;
+        task = null;
+        boolean timeout = isTimeout(elapse);
+        if (null != metrics)
+            metrics.record(elapse, timeout);
+        if (timeout && log.isWarnEnabled())
+            log.warn("{} took {}us on {}", StallDetector.describe(watched),
+                     TimeUnit.NANOSECONDS.toMicros(elapse), getName());
     }
 
-    boolean isTimeout() {
-        return 0 < stopWatch() - maxDuration;
+    boolean isTimeout(long elapse) {
+        return elapse > maxDuration;
     }
 }
@@ -0,0 +1,112 @@
+package io.cantor.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens a connection per request, as short-lived clients do, and closes it once the response
+ * is read, so that the accept path of the server is measured along with a request.
+ * <p>
+ * The main method runs it once on the native epoll transport and once on the NIO one, which is
+ * forced by {@code -Dcantor.http.epoll=false}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ConnectionChurnBenchmark {
+
+    private static final int PORT = 18080;
+    private static final byte[] REQUEST = ("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BODY = "pong".getBytes(StandardCharsets.US_ASCII);
+    private static final int RESPONSE_BUFFER = 256;
+
+    private InetSocketAddress address;
+
+    @Setup
+    public void setup() {
+        Server server = new Server(
+                Applications.builder()
+                            .inline("/ping", RequestMappingRegistry.HttpMethodKey.GET,
+                                    (scheduler, req, resp) -> resp.ok(BODY))
+                            .build());
+        server.startup(PORT);
+        address = new InetSocketAddress("127.0.0.1", PORT);
+    }
+
+    @Benchmark
+    public int connectAndRequest() throws IOException {
+        try (Socket socket = new Socket()) {
+            // reset on close, so that the client ports are not held in TIME_WAIT
+            socket.setSoLinger(true, 0);
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            OutputStream out = socket.getOutputStream();
+            out.write(REQUEST);
+            out.flush();
+            return readResponse(socket.getInputStream());
+        }
+    }
+
+    /**
+     * Reads until the body, whose length is known, has been received after the headers.
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        byte[] buffer = new byte[RESPONSE_BUFFER];
+        int read = 0;
+        int headerEnd = -1;
+        while (headerEnd < 0 || read < headerEnd + BODY.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0)
+                throw new IOException("connection closed before the response is complete");
+            read += n;
+            if (headerEnd < 0)
+                headerEnd = headerEnd(buffer, read);
+        }
+        return read;
+    }
+
+    private static int headerEnd(byte[] buffer, int length) {
+        for (int i = 3; i < length; i++) {
+            if (buffer[i - 3] == '\r' && buffer[i - 2] == '\n' && buffer[i - 1] == '\r'
+                    && buffer[i] == '\n')
+                return i + 1;
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String epoll : new String[]{"true", "false"}) {
+            Options options = new OptionsBuilder().include(
+                    ConnectionChurnBenchmark.class.getSimpleName())
+                                                  .jvmArgsAppend(String.format("-D%s=%s",
+                                                          Bootstraps.EPOLL_PROPERTY, epoll))
+                                                  .build();
+            new Runner(options).run();
+        }
+    }
+}
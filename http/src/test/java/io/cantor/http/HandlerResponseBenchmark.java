@@ -0,0 +1,121 @@
+package io.cantor.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * Encodes the JSON response of an id, as {@code /id} answers it, into the bytes on the wire:
+ * once the way it was built before, with string headers, a formatted body and an unpooled heap
+ * content, and once by the pre-encoded constants and digits written into a pooled direct
+ * content.
+ * <p>
+ * The main method runs with the GC profiler, {@code gc.alloc.rate.norm} is the bytes allocated
+ * per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerResponseBenchmark {
+
+    private static final long ID = 5764607523034234881L;
+    private static final long RANGE = 1000L;
+    private static final String SERVER_ID = "cantor-01";
+
+    private static final CharSequence SERVER = HttpHeaders.constant("server");
+    private static final CharSequence SERVER_VALUE = HttpHeaders.constant(SERVER_ID);
+    private static final CharSequence CONTENT_TYPE = HttpHeaders.constant(HttpHeaders.CONTENT_TYPE);
+    private static final CharSequence JSON = HttpHeaders.constant(HttpHeaders.APPLICATION_JSON);
+    private static final CharSequence START = HttpHeaders.constant("{\"start\":\"");
+    private static final CharSequence RANGE_PART = HttpHeaders.constant("\",\"range\": ");
+    private static final CharSequence END = HttpHeaders.constant("}");
+
+    private EmbeddedChannel channel;
+    private HandlerRequest request;
+
+    @Setup
+    public void setup() {
+        channel = new EmbeddedChannel(new BoundHttpResponseEncoder());
+        request = new HandlerRequest(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                                                                HttpMethod.GET, "/id?cate=1"),
+                                     channel);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int legacy() {
+        FullHttpResponse response = new DefaultFullHttpResponse(
+                HttpVersion.valueOf(request.version()), HttpResponseStatus.OK);
+        response.headers().set("server", SERVER_ID);
+        response.headers().set(HttpHeaders.CONTENT_TYPE, HttpHeaders.APPLICATION_JSON);
+        response.content().writeBytes(String.format("{%s,%s}",
+                String.format("\"%s\":\"%s\"", "start", String.valueOf(ID)),
+                String.format("\"%s\": %s", "range", RANGE)).getBytes());
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH.toString(),
+                               response.content().writerIndex());
+        return write(response);
+    }
+
+    @Benchmark
+    public int encoded() {
+        HandlerResponse response = new HandlerResponse(request, null,
+                                                       PooledDirectByteBufAllocator.INSTANCE,
+                                                       null);
+        response.header(SERVER, SERVER_VALUE)
+                .header(CONTENT_TYPE, JSON)
+                .writeAscii(START)
+                .writeDecimal(ID)
+                .writeAscii(RANGE_PART)
+                .writeDecimal(RANGE)
+                .writeAscii(END);
+        return write(response.seal());
+    }
+
+    private int write(FullHttpResponse response) {
+        channel.writeOutbound(response);
+        int bytes = 0;
+        for (ByteBuf buf = channel.readOutbound(); null != buf; buf = channel.readOutbound()) {
+            bytes += buf.readableBytes();
+            buf.release();
+        }
+        return bytes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(HandlerResponseBenchmark.class.getSimpleName())
+                                              .addProfiler(GCProfiler.class)
+                                              .build();
+        new Runner(options).run();
+    }
+}
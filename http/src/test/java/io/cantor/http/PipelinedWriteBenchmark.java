@@ -0,0 +1,175 @@
+package io.cantor.http;
+
+import com.typesafe.config.ConfigFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipelines a batch of requests on a keep-alive connection in a single write and reads their
+ * responses, with the flushes of the server coalesced ({@code http.flush.batch=16}) or not
+ * ({@code 0}), for a handler run inline on the I/O loop and one offloaded to a compute loop.
+ * <p>
+ * At the end of every iteration the write syscalls of the I/O loops, read from {@code
+ * /proc/self/task/<tid>/io} of the threads named {@code traffic-io}, are printed per response.
+ * The client sends by {@code send}, and the loops are woken up by other threads, neither of
+ * which is counted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelinedWriteBenchmark {
+
+    private static final int PORT = 18081;
+    private static final int DEPTH = 16;
+    private static final byte[] BODY = "pong".getBytes(StandardCharsets.US_ASCII);
+    private static final Path TASKS = Paths.get("/proc/self/task");
+    private static final String IO_LOOP = "traffic-io";
+    private static final String SYSCW = "syscw:";
+
+    @Param({"0", "16"})
+    private int flushBatch;
+
+    @Param({"/inline", "/offload"})
+    private String path;
+
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    private byte[] requests;
+    // the responses to a path are all of the same length
+    private int responseLength;
+    private final byte[] buffer = new byte[64 * 1024];
+    private long batches;
+    private long writes;
+
+    @Setup
+    public void setup() throws IOException {
+        AppRequestResponseHandler<AffinityScheduler, HandlerRequest, HandlerResponse> handler =
+                (scheduler, req, resp) -> resp.ok(BODY);
+        Server server = new Server(
+                Applications.builder()
+                            .inline("/inline", RequestMappingRegistry.HttpMethodKey.GET, handler)
+                            .get("/offload", handler)
+                            .build(),
+                ConfigFactory.parseString("http.flush.batch=" + flushBatch));
+        server.startup(PORT);
+
+        StringBuilder batch = new StringBuilder();
+        for (int i = 0; i < DEPTH; i++)
+            batch.append("GET ").append(path).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        requests = batch.toString().getBytes(StandardCharsets.US_ASCII);
+
+        socket = new Socket("127.0.0.1", PORT);
+        socket.setTcpNoDelay(true);
+        out = socket.getOutputStream();
+        in = socket.getInputStream();
+        out.write(requests, 0, requests.length / DEPTH);
+        responseLength = readResponse();
+    }
+
+    @Setup(Level.Iteration)
+    public void startCounting() throws IOException {
+        batches = 0;
+        writes = writeSyscalls();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printWrites() throws IOException {
+        System.out.printf("%n%.3f write syscalls per response%n",
+                          (double) (writeSyscalls() - writes) / (batches * DEPTH));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        socket.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEPTH)
+    public int pipelined() throws IOException {
+        out.write(requests);
+        batches++;
+        int remaining = responseLength * DEPTH;
+        while (0 < remaining)
+            remaining -= read(0);
+        return remaining;
+    }
+
+    /**
+     * Reads a single response until its body, whose length is known, follows the headers.
+     */
+    private int readResponse() throws IOException {
+        int read = 0;
+        int headerEnd = -1;
+        while (headerEnd < 0 || read < headerEnd + BODY.length) {
+            read += read(read);
+            for (int i = 3; headerEnd < 0 && i < read; i++) {
+                if (buffer[i - 3] == '\r' && buffer[i - 2] == '\n' && buffer[i - 1] == '\r'
+                        && buffer[i] == '\n')
+                    headerEnd = i + 1;
+            }
+        }
+        return read;
+    }
+
+    private int read(int offset) throws IOException {
+        int n = in.read(buffer, offset, buffer.length - offset);
+        if (n < 0)
+            throw new IOException("connection closed before the responses are complete");
+        return n;
+    }
+
+    private static long writeSyscalls() throws IOException {
+        long writes = 0;
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(TASKS)) {
+            for (Path task : tasks) {
+                String name = new String(Files.readAllBytes(task.resolve("comm")),
+                                         StandardCharsets.US_ASCII);
+                if (!name.startsWith(IO_LOOP))
+                    continue;
+                for (String line : Files.readAllLines(task.resolve("io"),
+                                                      StandardCharsets.US_ASCII)) {
+                    if (line.startsWith(SYSCW))
+                        writes += Long.parseLong(line.substring(SYSCW.length()).trim());
+                }
+            }
+        }
+        return writes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(
+                PipelinedWriteBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
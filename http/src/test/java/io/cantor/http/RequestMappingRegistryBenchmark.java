@@ -0,0 +1,90 @@
+package io.cantor.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * Measures the routing of a request by {@link RequestMappingRegistry#find(HandlerRequest)}, for
+ * a static path, a path with a wildcard and a path without a route, among the routes of the
+ * service.
+ * <p>
+ * The main method runs all of them, add {@code -prof gc} to the options of {@code
+ * org.openjdk.jmh.Main} to see the allocation per lookup as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestMappingRegistryBenchmark {
+
+    private static final AppRequestResponseHandler<AffinityScheduler, HandlerRequest,
+            HandlerResponse> HANDLER = (scheduler, req, resp) -> resp.ok();
+
+    private RequestMappingRegistry<AffinityScheduler, HandlerRequest, HandlerResponse> registry;
+    private HandlerRequest staticRequest;
+    private HandlerRequest wildcardRequest;
+    private HandlerRequest unmatchedRequest;
+
+    @Setup
+    public void setup() {
+        registry = new RequestMappingRegistry<>();
+        for (String path : new String[]{"/id", "/ids", "/info", "/health", "/metrics"}) {
+            registry.registry(RequestMappingRegistry.HttpMethodKey.GET, path, HANDLER);
+            registry.registry(RequestMappingRegistry.HttpMethodKey.POST, path, HANDLER);
+        }
+        registry.registry(RequestMappingRegistry.HttpMethodKey.GET,
+                          "/categories/{cate}/ids", HANDLER);
+        registry.compile();
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        staticRequest = request(channel, "/id?cate=1&range=1000");
+        wildcardRequest = request(channel, "/categories/12/ids?range=10");
+        unmatchedRequest = request(channel, "/unknown/path");
+    }
+
+    @Benchmark
+    public RequestMappingRegistry.PathMatcher staticPath() {
+        return registry.find(staticRequest);
+    }
+
+    @Benchmark
+    public RequestMappingRegistry.PathMatcher wildcardPath() {
+        return registry.find(wildcardRequest);
+    }
+
+    @Benchmark
+    public RequestMappingRegistry.PathMatcher unmatchedPath() {
+        return registry.find(unmatchedRequest);
+    }
+
+    private static HandlerRequest request(EmbeddedChannel channel, String uri) {
+        return new HandlerRequest(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                                                             uri), channel);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(
+                RequestMappingRegistryBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
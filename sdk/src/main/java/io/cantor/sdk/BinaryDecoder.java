@@ -0,0 +1,31 @@
+package io.cantor.sdk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Decodes the binary response of {@code /id}, which is 16 bytes in little-endian: the start id
+ * in 8 bytes, then the range and the descriptor in 4 bytes each.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class BinaryDecoder {
+
+    public static final String CONTENT_TYPE = "application/x-cantor-binary";
+    static final int LENGTH = 16;
+
+    public static Range decode(byte[] body) {
+        if (null == body || body.length != LENGTH)
+            throw new SequenceException(String.format("illegal binary response of %s bytes",
+                    null == body ? 0 : body.length));
+
+        ByteBuffer buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        long start = buffer.getLong();
+        long range = buffer.getInt();
+        // the descriptor is carried by the start id as well
+        buffer.getInt();
+        return new Range(start, range);
+    }
+}
@@ -13,6 +13,7 @@ public class RequestBuilder {
     private long category;
     private long range;
     private Long timeout;
+    private boolean binary = false;
 
     public static RequestBuilder builder() {
         return new RequestBuilder();
@@ -33,8 +34,17 @@ public class RequestBuilder {
         return this;
     }
 
+    /**
+     * Asks for the binary response, which is decoded by {@link BinaryDecoder}. It is off by
+     * default, a server without it responds JSON anyway.
+     */
+    public RequestBuilder binary(boolean binary) {
+        this.binary = binary;
+        return this;
+    }
+
     public SequenceRequest build() {
-        return new SequenceRequest(category, range, timeout);
+        return new SequenceRequest(category, range, timeout, binary);
     }
 
 
@@ -43,17 +53,20 @@ public class RequestBuilder {
         private long category;
         private Long timeout;
         private Map<String, String> queries = new HashMap<>();
+        private Map<String, String> headers = new HashMap<>();
 
-        private SequenceRequest(long category, long range, Long timeout) {
+        private SequenceRequest(long category, long range, Long timeout, boolean binary) {
             this.category = category;
             this.timeout = timeout;
+            if (binary)
+                headers.put("Accept", BinaryDecoder.CONTENT_TYPE);
             queries.put("cate", Long.valueOf(category).toString());
             queries.put("range", Long.valueOf(range).toString());
             queries.put("mode", "0");
         }
 
         public Map<String, String> headers() {
-            return null;
+            return headers;
         }
 
         public Map<String, String> queries() {
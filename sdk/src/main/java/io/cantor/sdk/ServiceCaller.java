@@ -47,14 +47,15 @@ public class ServiceCaller {
                 .port(port)
                 .addPathSegment(sequenceRequest.path());
         sequenceRequest.queries().forEach(urlBuilder::addQueryParameter);
-        okhttp3.Request request = new okhttp3.Request.Builder()
+        okhttp3.Request.Builder requestBuilder = new okhttp3.Request.Builder()
                 .url(urlBuilder.build())
-                .get()
-                .build();
+                .get();
+        sequenceRequest.headers().forEach(requestBuilder::header);
+        okhttp3.Request request = requestBuilder.build();
 
         CountDownLatch latch = new CountDownLatch(1);
 
-        CopyOnWriteArrayList<SequenceRespBody> syncHolder
+        CopyOnWriteArrayList<Range> syncHolder
                 = new CopyOnWriteArrayList<>();
         client.newCall(request).enqueue(new Callback() {
             @Override
@@ -68,13 +69,20 @@ public class ServiceCaller {
             @Override
             public void onResponse(Call call, okhttp3.Response response) {
                 try {
+                    String contentType = response.header("Content-Type");
+                    if (response.isSuccessful() && null != contentType
+                        && contentType.startsWith(BinaryDecoder.CONTENT_TYPE)) {
+                        syncHolder.add(BinaryDecoder.decode(response.body().bytes()));
+                        return;
+                    }
+
                     String responseString = new String(response.body().bytes(), Charset.forName("utf-8"));
                     if (log.isInfoEnabled()) {
                         log.info("batch get ids from server [{}]", responseString);
                     }
                     ServiceCaller.SequenceRespBody respBody = OBJECT_MAPPER.readValue(responseString,
                                                                                       ServiceCaller.SequenceRespBody.class);
-                    syncHolder.add(respBody);
+                    syncHolder.add(respBody.sequenceRange());
                 } catch (Exception e) {
                     log.error("failed to parse response");
                 } finally {
@@ -90,7 +98,7 @@ public class ServiceCaller {
                 throw new TimeoutException();
             }
             if (!syncHolder.isEmpty()) {
-                return syncHolder.get(0).sequenceRange();
+                return syncHolder.get(0);
             } else {
                 log.debug("no response data found");
                 throw new SequenceException("no response data found");
@@ -0,0 +1,32 @@
+package io.cantor.sdk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class BinaryDecoderTest {
+
+    @Test
+    public void testDecode() {
+        long id = 5L << Deserializer.CATEGORY_LEFT | 2L << Deserializer.INSTANCE_LEFT | 1L;
+        byte[] body = ByteBuffer.allocate(BinaryDecoder.LENGTH)
+                                .order(ByteOrder.LITTLE_ENDIAN)
+                                .putLong(id)
+                                .putInt(3)
+                                .putInt(0)
+                                .array();
+
+        Range range = BinaryDecoder.decode(body);
+        Assert.assertEquals(id, range.getAndIncrement().id());
+        Assert.assertEquals(id + 1, range.getAndIncrement().id());
+        Assert.assertEquals(id + 2, range.getAndIncrement().id());
+        Assert.assertNull(range.peek());
+    }
+
+    @Test(expected = SequenceException.class)
+    public void testIllegalLength() {
+        BinaryDecoder.decode(new byte[8]);
+    }
+}
@@ -17,18 +17,26 @@ import io.cantor.service.clients.Parser;
 import io.cantor.service.clients.TimeWatcher;
 import io.cantor.service.clients.storage.Storage;
 import io.cantor.service.clients.storage.StorageFactory;
+import io.cantor.service.metrics.ComputeMetrics;
+import io.cantor.service.metrics.LoopMetrics;
 import io.cantor.service.rest.IdGenerator;
 import io.cantor.service.rest.IdParser;
 import lombok.extern.slf4j.Slf4j;
 
+import static io.cantor.http.RequestMappingRegistry.HttpMethodKey.GET;
+import static io.cantor.http.RequestMappingRegistry.HttpMethodKey.POST;
+
 @Slf4j
 public class InitialService {
 
     private static final String ID_PATTERN = "/id";
+    private static final String BATCH_ID_PATTERN = "/ids";
     private static final String PARSE_PATTERN = "/info";
 
     private TimeWatcher watcher;
 
+    private IdGenerator idGenerator;
+
     private List<Storage> storages;
 
     public static void main(String[] args) {
@@ -87,14 +95,18 @@ public class InitialService {
 
         // init api handlers
         log.info("init api handlers");
-        IdGenerator idGenerator = new IdGenerator(storages, watcher);
+        idGenerator = new IdGenerator(appConfig, storages, watcher);
         Application application = Applications.builder()
                                               .post(ID_PATTERN, idGenerator)
                                               .get(ID_PATTERN, idGenerator)
+                                              .inline(BATCH_ID_PATTERN, POST, idGenerator::handleBatch)
+                                              .inline(BATCH_ID_PATTERN, GET, idGenerator::handleBatch)
                                               .get(PARSE_PATTERN, new IdParser())
                                               .build();
 
-        Server server = new Server(application);
+        Server server = new Server(application, appConfig);
+        ComputeMetrics.create(server.computeMetrics());
+        server.loopMetrics().forEach(LoopMetrics::create);
         server.startup(8080);
     }
 
@@ -103,6 +115,9 @@ public class InitialService {
         if (null != watcher)
             watcher.stop();
 
+        if (null != idGenerator)
+            idGenerator.close();
+
         // destroy storage
         for (Storage storage : storages) {
             log.info("destroy {} storage", storage.type());
@@ -3,6 +3,7 @@ package io.cantor.service;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import lombok.extern.slf4j.Slf4j;
@@ -30,6 +31,9 @@ public class Utils {
             } else if (value instanceof Map) {
                 String newValue = convertToString((Map<String, Object>) value);
                 builder.append(String.format("\"%s\": %s", key, newValue));
+            } else if (value instanceof List) {
+                String newValue = convertToString((List<Map<String, Object>>) value);
+                builder.append(String.format("\"%s\": %s", key, newValue));
             }
             if (iterator.hasNext())
                 builder.append(",");
@@ -39,6 +43,19 @@ public class Utils {
         return builder.toString();
     }
 
+    public static String convertToString(List<Map<String, Object>> data) {
+        StringBuilder builder = new StringBuilder("[");
+        Iterator<Map<String, Object>> iterator = data.iterator();
+        while (iterator.hasNext()) {
+            builder.append(convertToString(iterator.next()));
+            if (iterator.hasNext())
+                builder.append(",");
+        }
+        builder.append("]");
+
+        return builder.toString();
+    }
+
     public static String hostname() {
         try {
             return InetAddress.getLocalHost().getHostName();
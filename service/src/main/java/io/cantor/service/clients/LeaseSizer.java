@@ -0,0 +1,46 @@
+package io.cantor.service.clients;
+
+/**
+ * Sizes the segments leased for a category from an EWMA of the sequences it consumes per second,
+ * so that a quiet category does not waste the sequence space of a second and a hot one does not
+ * lease again and again within it.
+ * <p>
+ * The rate is only rolled by the tick of the time watcher, the leases read the size.
+ */
+class LeaseSizer {
+
+    private final long min;
+    private final long max;
+    private final double alpha;
+    private final double headroom;
+
+    private double rate;
+    private volatile long size;
+
+    /**
+     * @param alpha    weight of the latest second in the rate, in (0, 1]
+     * @param headroom times of the rate to lease, as the rate lags behind a rising consumption
+     */
+    LeaseSizer(long min, long max, double alpha, double headroom) {
+        this.min = min;
+        this.max = max;
+        this.alpha = alpha;
+        this.headroom = headroom;
+        this.size = min;
+    }
+
+    /**
+     * Folds the sequences consumed in the seconds since the last roll into the rate, decaying it
+     * for the idle seconds in between.
+     */
+    void roll(long consumed, long seconds) {
+        rate = alpha * consumed + (1 - alpha) * rate;
+        if (seconds > 1)
+            rate *= Math.pow(1 - alpha, seconds - 1);
+        size = Math.min(max, Math.max(min, (long) (rate * headroom)));
+    }
+
+    long size() {
+        return size;
+    }
+}
@@ -0,0 +1,197 @@
+package io.cantor.service.clients;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * An open addressing hash table of the entries per {@code ts-category-instance}, keyed by a
+ * packed {@code long} of the three parts, so that a lookup neither formats nor boxes the key.
+ * <p>
+ * The entries of every second live in their own generation. The generations are kept in a ring
+ * indexed by the timestamp, and a generation is replaced as a whole once a later second maps to
+ * its position, which expires all the entries of a past second in O(1). Lookups are lock-free,
+ * entries are inserted by CAS on their slot and never removed from a generation.
+ * <p>
+ * The entries of a second which has expired from the ring, or which are more than the capacity
+ * of its generation, are kept in a bounded overflow cache instead, which expires them once they
+ * have not been used for as long as the ring lasts.
+ */
+class SegmentTable<E> {
+
+    private static final long INSTANCE_BIT = 16L;
+    private static final long CATEGORY_BIT = 16L;
+    private static final long INSTANCE_MUSK = ~(-1L << INSTANCE_BIT);
+    private static final long CATEGORY_MUSK = ~(-1L << CATEGORY_BIT);
+    private static final long CATEGORY_LEFT = INSTANCE_BIT;
+    private static final long TIMESTAMP_LEFT = CATEGORY_BIT + CATEGORY_LEFT;
+
+    private final int capacity;
+    private final int mask;
+    private final int generationMask;
+    private final Supplier<E> factory;
+    private final AtomicReferenceArray<Generation<E>> generations;
+    private final Cache<Long, E> overflow;
+
+    /**
+     * @param capacity    max entries per second, rounded up to a power of two
+     * @param seconds     the seconds kept in the ring, rounded up to a power of two
+     * @param overflowMax max entries kept out of the ring
+     * @param factory     creates the entry of an absent key
+     */
+    SegmentTable(int capacity, int seconds, int overflowMax, Supplier<E> factory) {
+        if (capacity <= 0 || seconds <= 0 || overflowMax <= 0)
+            throw new IllegalArgumentException("capacity, seconds and overflow should be positive");
+        this.capacity = powerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        int ring = powerOfTwo(seconds);
+        this.generationMask = ring - 1;
+        this.generations = new AtomicReferenceArray<>(ring);
+        this.overflow = CacheBuilder.newBuilder()
+                                    .maximumSize(overflowMax)
+                                    .expireAfterAccess(ring, TimeUnit.SECONDS)
+                                    .build();
+        this.factory = factory;
+    }
+
+    private static int powerOfTwo(int n) {
+        return 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    static long key(long ts, long category, long instance) {
+        return ts << TIMESTAMP_LEFT | (category & CATEGORY_MUSK) << CATEGORY_LEFT |
+                instance & INSTANCE_MUSK;
+    }
+
+    static long timestamp(long key) {
+        return key >>> TIMESTAMP_LEFT;
+    }
+
+    static long category(long key) {
+        return key >>> CATEGORY_LEFT & CATEGORY_MUSK;
+    }
+
+    static long instance(long key) {
+        return key & INSTANCE_MUSK;
+    }
+
+    /**
+     * @return the entry of the key, or null if it is absent
+     */
+    E get(long key) {
+        long ts = timestamp(key);
+        Generation<E> generation = generations.get((int) ts & generationMask);
+        if (null == generation || generation.ts != ts)
+            return overflow.getIfPresent(key);
+
+        int i = index(key);
+        for (int probe = 0; probe < capacity; probe++) {
+            Slot<E> slot = generation.slots.get(i);
+            if (null == slot)
+                return null;
+            if (slot.key == key)
+                return slot.entry;
+            i = (i + 1) & mask;
+        }
+        // the generation was full when the key came
+        return overflow.getIfPresent(key);
+    }
+
+    /**
+     * @return the entry of the key, which is created if it is absent, in the overflow if the
+     * second of the key has expired or the entries of the second are more than the capacity
+     */
+    E getOrCreate(long key) {
+        Generation<E> generation = generation(timestamp(key));
+        if (null == generation)
+            return overflow(key);
+
+        Slot<E> created = null;
+        int i = index(key);
+        for (int probe = 0; probe < capacity; probe++) {
+            Slot<E> slot = generation.slots.get(i);
+            if (null == slot) {
+                if (null == created)
+                    created = new Slot<>(key, factory.get());
+                if (generation.slots.compareAndSet(i, null, created))
+                    return created.entry;
+                slot = generation.slots.get(i);
+            }
+            if (slot.key == key)
+                return slot.entry;
+            i = (i + 1) & mask;
+        }
+        return overflow(key);
+    }
+
+    private E overflow(long key) {
+        return overflow.asMap().computeIfAbsent(key, k -> factory.get());
+    }
+
+    /**
+     * Visits the entries of the second, nothing is visited if it is absent or has expired.
+     */
+    void forEach(long ts, Visitor<E> visitor) {
+        Generation<E> generation = generations.get((int) ts & generationMask);
+        if (null == generation || generation.ts != ts)
+            return;
+
+        for (int i = 0; i < capacity; i++) {
+            Slot<E> slot = generation.slots.get(i);
+            if (null != slot)
+                visitor.visit(slot.key, slot.entry);
+        }
+    }
+
+    private Generation<E> generation(long ts) {
+        int index = (int) ts & generationMask;
+        Generation<E> created = null;
+        for (; ; ) {
+            Generation<E> generation = generations.get(index);
+            if (null != generation && generation.ts == ts)
+                return generation;
+            if (null != generation && generation.ts > ts)
+                return null;
+
+            if (null == created)
+                created = new Generation<>(ts, capacity);
+            if (generations.compareAndSet(index, generation, created))
+                return created;
+        }
+    }
+
+    private int index(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    interface Visitor<E> {
+
+        void visit(long key, E entry);
+    }
+
+    private static class Generation<E> {
+
+        private final long ts;
+        private final AtomicReferenceArray<Slot<E>> slots;
+
+        Generation(long ts, int capacity) {
+            this.ts = ts;
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+    }
+
+    private static class Slot<E> {
+
+        private final long key;
+        private final E entry;
+
+        Slot(long key, E entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,724 @@
+package io.cantor.service.clients;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.typesafe.config.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.cantor.http.Threads;
+import io.cantor.service.clients.storage.Storage;
+import io.cantor.service.metrics.SequenceMetrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the sequence segments leased from {@link Storage} for every
+ * {@code ts-category-instance} key in a {@link SegmentTable}.
+ * <p>
+ * The segments are leased through {@link Storage#incrementAndGetAsync}, so that no caller is
+ * blocked on the storage unless it asks to by {@link #next}.
+ * <p>
+ * In prefetch mode every key is double-buffered: once the consumption of the current segment
+ * passes the watermark, the next segment is leased in the background, and the current one is
+ * switched to it without touching the storage on the request path.
+ * <p>
+ * In pre-lease mode the segments of the keys active in the current second are leased for the
+ * next second before it comes, so that the rollover does not hit the storage with a lease of
+ * every key at once.
+ * <p>
+ * The size of every lease follows the consumption rate of its category, see {@link LeaseSizer},
+ * which is taken from the segments of the seconds closed by every {@link #tick}.
+ * <p>
+ * A segment is handed out through stripes picked by the calling loop, each of which takes a
+ * chunk of a few ranges of the segment at a time, so that the loops serving the same key do not
+ * contend on one counter.
+ */
+@Slf4j
+public class SequenceCache {
+
+    private static final IllegalStateException LOAD_CACHE_EXCEPTION = new IllegalStateException(
+            "load cache failed");
+    private static final IllegalStateException LOAD_CACHE_CLIENT_EXCEPTION =
+            new IllegalStateException("load cache failed, client is unavailable");
+
+    private static final String PREFETCH_ENABLED = "sequence.prefetch.enabled";
+    private static final String PREFETCH_WATERMARK = "sequence.prefetch.watermark";
+    private static final String PRELEASE_ENABLED = "sequence.prelease.enabled";
+    private static final String LOAD_TIMEOUT = "sequence.load.timeout.ms";
+    private static final String STRIPES = "sequence.stripes";
+    private static final String STRIPE_RANGES = "sequence.stripe.ranges";
+    private static final String MAX_DELAY = "storage.max.delay.seconds";
+    private static final String LEASE_MIN = "sequence.lease.min";
+    private static final String LEASE_MAX = "sequence.lease.max";
+    private static final String LEASE_ALPHA = "sequence.lease.alpha";
+    private static final String LEASE_HEADROOM = "sequence.lease.headroom";
+    private static final double DEFAULT_PREFETCH_WATERMARK = 0.8;
+    private static final long DEFAULT_LOAD_TIMEOUT = 500L;
+    private static final int DEFAULT_MAX_DELAY = 600;
+    private static final long DEFAULT_STRIPE_RANGES = 8L;
+    private static final long DEFAULT_LEASE_MIN = 10000L;
+    private static final long DEFAULT_LEASE_MAX = 200000L;
+    private static final double DEFAULT_LEASE_ALPHA = 0.5;
+    private static final double DEFAULT_LEASE_HEADROOM = 1.2;
+
+    public static final long ILLEGAL_SEQ = -1L;
+
+    private static final long START_SEQ = 1L;
+    private static final int TABLE_CAPACITY = 1024;
+    private static final int TABLE_OVERFLOW = 4 * TABLE_CAPACITY;
+    private static final int CATEGORIES = 256;
+    private static final int CATEGORY_MASK = CATEGORIES - 1;
+
+    private final boolean prefetchEnabled;
+    private final boolean preLeaseEnabled;
+    private final double watermark;
+    private final long loadTimeout;
+    private final int stripes;
+    private final long stripeRanges;
+    private final SequenceMetrics metrics;
+    private final ScheduledExecutorService timer;
+    // the stripe index of the threads which are not loops, handed out in turn
+    private final AtomicInteger threadStripes = new AtomicInteger();
+    private final ThreadLocal<Integer> threadStripe = ThreadLocal.withInitial(
+            threadStripes::getAndIncrement);
+    private final SegmentTable<Entry> segments;
+    private final LeaseSizer[] sizers = new LeaseSizer[CATEGORIES];
+    // the second of the last tick, only accessed by the tick
+    private long lastTick = -1L;
+
+    public SequenceCache(Config config) {
+        prefetchEnabled = config.hasPath(PREFETCH_ENABLED) && config.getBoolean(PREFETCH_ENABLED);
+        preLeaseEnabled = config.hasPath(PRELEASE_ENABLED) && config.getBoolean(PRELEASE_ENABLED);
+        watermark = config.hasPath(PREFETCH_WATERMARK) ? config.getDouble(
+                PREFETCH_WATERMARK) : DEFAULT_PREFETCH_WATERMARK;
+        if (watermark <= 0 || watermark >= 1)
+            throw new IllegalArgumentException(
+                    String.format("%s should be in (0, 1), but it is %s", PREFETCH_WATERMARK,
+                            watermark));
+        loadTimeout = config.hasPath(LOAD_TIMEOUT) ? config.getLong(
+                LOAD_TIMEOUT) : DEFAULT_LOAD_TIMEOUT;
+        // a stripe per loop, as the I/O loops may serve requests inline as well as the compute
+        // ones; a single processor has no contention to take off the counter
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripeCount = config.hasPath(STRIPES) ? config.getInt(
+                STRIPES) : 1 == processors ? 1 : 2 * processors;
+        stripes = stripeCount <= 1 ? 0 : 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(
+                stripeCount - 1));
+        stripeRanges = config.hasPath(STRIPE_RANGES) ? config.getLong(
+                STRIPE_RANGES) : DEFAULT_STRIPE_RANGES;
+        metrics = SequenceMetrics.create();
+        // the seconds the service accepts, with the current one and the one pre-leased
+        int maxDelay = config.hasPath(MAX_DELAY) ? config.getInt(MAX_DELAY) : DEFAULT_MAX_DELAY;
+        segments = new SegmentTable<>(TABLE_CAPACITY, maxDelay + 2, TABLE_OVERFLOW, Entry::new);
+
+        long leaseMin = config.hasPath(LEASE_MIN) ? config.getLong(LEASE_MIN) : DEFAULT_LEASE_MIN;
+        long leaseMax = config.hasPath(LEASE_MAX) ? config.getLong(LEASE_MAX) : DEFAULT_LEASE_MAX;
+        double alpha = config.hasPath(LEASE_ALPHA) ? config.getDouble(
+                LEASE_ALPHA) : DEFAULT_LEASE_ALPHA;
+        double headroom = config.hasPath(LEASE_HEADROOM) ? config.getDouble(
+                LEASE_HEADROOM) : DEFAULT_LEASE_HEADROOM;
+        if (leaseMin <= 0 || leaseMax < leaseMin)
+            throw new IllegalArgumentException(
+                    String.format("%s should be positive and not larger than %s", LEASE_MIN,
+                            LEASE_MAX));
+        if (alpha <= 0 || alpha > 1)
+            throw new IllegalArgumentException(
+                    String.format("%s should be in (0, 1], but it is %s", LEASE_ALPHA, alpha));
+        for (int i = 0; i < CATEGORIES; i++)
+            sizers[i] = new LeaseSizer(leaseMin, leaseMax, alpha, headroom);
+
+        // the leases run on the threads of the storage, this one only times the loads out
+        timer = Executors.newSingleThreadScheduledExecutor(
+                (new ThreadFactoryBuilder()).setDaemon(false)
+                                            .setNameFormat("sequence-timer-%s")
+                                            .setUncaughtExceptionHandler((t, e) -> {
+                                                if (log.isErrorEnabled())
+                                                    log.error(
+                                                            "sequence timer thread error [thread {}]",
+                                                            t.getId(), e);
+                                            })
+                                            .build());
+    }
+
+    /**
+     * Serves the range from the cached segment, or loads it from the storage and waits for it.
+     *
+     * @return the start of the sequence range, or {@value ILLEGAL_SEQ} if the storage fails to
+     * lease a segment in time
+     */
+    public long next(long category, long ts, long range, Storage storage, long instanceId) {
+        long seq = tryNext(category, ts, range, instanceId);
+        return ILLEGAL_SEQ != seq ? seq : load(category, ts, range, storage, instanceId).join();
+    }
+
+    /**
+     * Serves the range from the cached segment only, without touching the storage.
+     *
+     * @return the start of the sequence range, or {@value ILLEGAL_SEQ} if the segment is absent
+     * or has run out, in which case it should be {@link #load loaded}
+     */
+    public long tryNext(long category, long ts, long range, long instanceId) {
+        Entry entry = segments.get(SegmentTable.key(ts, category, instanceId));
+        Segment segment = null == entry ? null : entry.segment;
+        return null == segment ? ILLEGAL_SEQ : segment.next(range);
+    }
+
+    /**
+     * Loads the segment from the storage without blocking, and serves the range from it.
+     *
+     * @return the start of the sequence range, which is {@value ILLEGAL_SEQ} if the storage fails
+     * to lease a segment within the load timeout; it never completes exceptionally
+     */
+    public CompletableFuture<Long> load(long category, long ts, long range, Storage storage,
+                                        long instanceId) {
+        Entry entry = segments.getOrCreate(SegmentTable.key(ts, category, instanceId));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(loadTimeout);
+        return within(load(entry, category, ts, range, storage, deadline), category, ts);
+    }
+
+    /**
+     * Loads the segments of the categories without blocking, and serves the ranges of the same
+     * index from them. The categories which have no segment yet are leased from the storage
+     * together in one call.
+     *
+     * @return the starts of the sequence ranges in the order of the categories, any of which is
+     * {@value ILLEGAL_SEQ} if the storage fails to lease its segment within the load timeout
+     */
+    public CompletableFuture<long[]> load(long[] categories, long ts, long[] ranges,
+                                          Storage storage, long instanceId) {
+        int count = categories.length;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(loadTimeout);
+        List<CompletableFuture<Long>> seqs = new ArrayList<>(count);
+        List<Integer> leasing = new ArrayList<>(count);
+        List<Entry> leasingEntries = new ArrayList<>(count);
+        List<CompletableFuture<Segment>> leasingFlights = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long category = categories[i];
+            long range = ranges[i];
+            Entry entry = segments.getOrCreate(SegmentTable.key(ts, category, instanceId));
+
+            CompletableFuture<Segment> flight = null;
+            if (null == entry.segment) {
+                flight = new CompletableFuture<>();
+                if (!entry.loading.compareAndSet(null, flight)) {
+                    flight = null;
+                } else if (null != entry.segment) {
+                    // landed before this flight took off
+                    land(entry, flight, entry.segment);
+                } else {
+                    leasing.add(i);
+                    leasingEntries.add(entry);
+                    leasingFlights.add(flight);
+                }
+            }
+
+            Entry loaded = entry;
+            CompletableFuture<Long> seq = null == flight ? load(entry, category, ts, range,
+                    storage, deadline) : flight.thenCompose(segment -> {
+                if (null == segment)
+                    return CompletableFuture.completedFuture(ILLEGAL_SEQ);
+                long next = segment.next(range);
+                return ILLEGAL_SEQ != next ? CompletableFuture.completedFuture(next) : load(loaded,
+                        category, ts, range, storage, deadline);
+            });
+            seqs.add(within(seq, category, ts));
+        }
+
+        if (!leasing.isEmpty())
+            leaseAll(categories, ts, ranges, storage, leasing, leasingEntries, leasingFlights);
+
+        return CompletableFuture.allOf(seqs.toArray(new CompletableFuture[count])).thenApply(v -> {
+            long[] starts = new long[count];
+            for (int i = 0; i < count; i++)
+                starts[i] = seqs.get(i).join();
+            return starts;
+        });
+    }
+
+    /**
+     * Leases in the background the segments of the next second for the keys which have been
+     * served from the storage in the current second. A request of the next second coming before
+     * the lease lands waits for it as a coalesced load.
+     */
+    public void preLease(long ts, long nextTs) {
+        if (!preLeaseEnabled || nextTs <= ts)
+            return;
+        segments.forEach(ts, (key, entry) -> {
+            Segment segment = entry.segment;
+            if (null == segment || !segment.storage.available())
+                return;
+            Entry next = segments.getOrCreate(
+                    SegmentTable.key(nextTs, segment.category, SegmentTable.instance(key)));
+            preLease(next, segment.category, nextTs, segment.storage);
+        });
+    }
+
+    /**
+     * Rolls the rate of every category on the tick to the second, by the sequences handed out of
+     * the segments of the seconds since the last tick. Requests of those seconds coming after the
+     * tick are not counted.
+     */
+    public void tick(long ts) {
+        if (lastTick < 0 || ts <= lastTick) {
+            lastTick = Math.max(lastTick, ts);
+            return;
+        }
+
+        long[] consumed = new long[CATEGORIES];
+        for (long second = lastTick; second < ts; second++)
+            segments.forEach(second, (key, entry) -> consumed[(int) SegmentTable.category(key)
+                    & CATEGORY_MASK] += entry.consumed());
+        long served = 0;
+        for (int i = 0; i < CATEGORIES; i++) {
+            sizers[i].roll(consumed[i], ts - lastTick);
+            served += consumed[i];
+        }
+        if (0 < served)
+            metrics.served(served);
+        lastTick = ts;
+    }
+
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private CompletableFuture<Long> load(Entry entry, long category, long ts, long range,
+                                         Storage storage, long deadline) {
+        // keep on loading as long as the storage leases in time, even if the segments run out
+        // faster than they are loaded
+        if (System.nanoTime() - deadline > 0) {
+            metrics.loadTimeout();
+            if (log.isWarnEnabled())
+                log.warn("segments of [cate {}] [ts {}] ran out faster than loading in {} ms",
+                        category, ts, loadTimeout);
+            return CompletableFuture.completedFuture(ILLEGAL_SEQ);
+        }
+
+        Segment exhausted = entry.segment;
+        if (null != exhausted) {
+            // landed since the caller missed it
+            long seq = exhausted.next(range);
+            if (ILLEGAL_SEQ != seq)
+                return CompletableFuture.completedFuture(seq);
+        }
+
+        return flight(entry, exhausted, category, ts, range, storage).thenCompose(segment -> {
+            if (null == segment)
+                return CompletableFuture.completedFuture(ILLEGAL_SEQ);
+            long seq = segment.next(range);
+            return ILLEGAL_SEQ != seq ? CompletableFuture.completedFuture(seq) : load(entry,
+                    category, ts, range, storage, deadline);
+        });
+    }
+
+    /**
+     * Loads the segment of the entry in a single flight. The first caller leases it from the
+     * storage, while the concurrent callers share the result, instead of leasing again or
+     * falling back to the local generator.
+     *
+     * @param exhausted the segment of the entry which has run out, null if it is absent
+     * @return the loaded segment, which is null if the storage fails to lease it
+     */
+    private CompletableFuture<Segment> flight(Entry entry, Segment exhausted, long category,
+                                              long ts, long range, Storage storage) {
+        CompletableFuture<Segment> flight = new CompletableFuture<>();
+        for (; ; ) {
+            CompletableFuture<Segment> running = entry.loading.get();
+            if (null != running) {
+                metrics.coalescedLoad();
+                return running;
+            }
+            if (entry.loading.compareAndSet(null, flight))
+                break;
+        }
+
+        Segment segment = entry.segment;
+        if (null != segment && segment != exhausted) {
+            // reloaded by a flight which has landed before this one took off
+            land(entry, flight, segment);
+            return flight;
+        }
+
+        CompletableFuture<Segment> loaded;
+        if (prefetchEnabled && null != exhausted) {
+            metrics.prefetchMiss();
+            loaded = exhausted.whenBuffered().thenCompose(
+                    buffered -> null != buffered ? CompletableFuture.completedFuture(
+                            buffered) : leaseSegment(category, ts, range, storage));
+        } else {
+            loaded = leaseSegment(category, ts, range, storage);
+        }
+        loaded.whenComplete((loadedSegment, e) -> {
+            if (null != e && log.isWarnEnabled())
+                log.warn("load segment failed for [cate {}] [ts {}]", category, ts, e);
+            land(entry, flight, loadedSegment);
+        });
+        return flight;
+    }
+
+    private CompletableFuture<Segment> leaseSegment(long category, long ts, long range,
+                                                    Storage storage) {
+        metrics.blockingLoad();
+        return lease(category, ts, range, storage).thenApply(
+                sequence -> new Segment(sequence, category, ts, storage));
+    }
+
+    private void land(Entry entry, CompletableFuture<Segment> flight, Segment segment) {
+        if (null != segment) {
+            Segment replaced = entry.segment;
+            if (null != replaced && replaced != segment) {
+                segment.adopt(replaced);
+                entry.retired.addAndGet(replaced.consumed());
+            }
+            entry.segment = segment;
+        }
+        entry.loading.compareAndSet(flight, null);
+        flight.complete(segment);
+    }
+
+    private void leaseAll(long[] categories, long ts, long[] ranges, Storage storage,
+                          List<Integer> indexes, List<Entry> entries,
+                          List<CompletableFuture<Segment>> flights) {
+        int count = indexes.size();
+        long[] leasingCategories = new long[count];
+        long[] sizes = new long[count];
+        for (int j = 0; j < count; j++) {
+            int i = indexes.get(j);
+            leasingCategories[j] = categories[i];
+            sizes[j] = leaseSize(categories[i], ranges[i]);
+            metrics.blockingLoad();
+        }
+
+        CompletionStage<long[]> leased;
+        if (storage.available()) {
+            leased = storage.incrementAndGetAsync(leasingCategories, ts, sizes);
+        } else {
+            CompletableFuture<long[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(LOAD_CACHE_CLIENT_EXCEPTION);
+            leased = failed;
+        }
+        leased.whenComplete((incrementedSeqs, e) -> {
+            if (null != e && log.isErrorEnabled())
+                log.error("get and increment in failed for [cates {}] [ts {}] [ranges {}] in {}",
+                        Arrays.toString(leasingCategories), ts, Arrays.toString(sizes),
+                        storage.getClass().getSimpleName(), e);
+            for (int j = 0; j < count; j++) {
+                long category = leasingCategories[j];
+                Segment segment = null == e ? new Segment(
+                        sequence(category, sizes[j], incrementedSeqs[j]), category, ts,
+                        storage) : null;
+                land(entries.get(j), flights.get(j), segment);
+            }
+        });
+    }
+
+    private void preLease(Entry entry, long category, long ts, Storage storage) {
+        if (null != entry.segment)
+            return;
+        CompletableFuture<Segment> flight = new CompletableFuture<>();
+        if (!entry.loading.compareAndSet(null, flight))
+            return;
+
+        lease(category, ts, 0L, storage).whenComplete((sequence, e) -> {
+            if (null != e) {
+                if (log.isWarnEnabled())
+                    log.warn("pre-lease segment failed for [cate {}] [ts {}]", category, ts, e);
+                land(entry, flight, null);
+                return;
+            }
+            metrics.preLease();
+            land(entry, flight, new Segment(sequence, category, ts, storage));
+        });
+    }
+
+    private int stripe() {
+        int loop = Threads.loopIndex();
+        return 0 <= loop ? loop : threadStripe.get();
+    }
+
+    private LeaseSizer sizer(long category) {
+        return sizers[(int) category & CATEGORY_MASK];
+    }
+
+    /**
+     * @param range the least size of the lease, as the caller needs that many sequences
+     */
+    private CompletableFuture<CacheSequence> lease(long category, long ts, long range,
+                                                   Storage storage) {
+        if (!storage.available()) {
+            CompletableFuture<CacheSequence> failed = new CompletableFuture<>();
+            failed.completeExceptionally(LOAD_CACHE_CLIENT_EXCEPTION);
+            return failed;
+        }
+        long size = leaseSize(category, range);
+        return storage.incrementAndGetAsync(category, ts, size).handle((incrementedSeq, e) -> {
+            if (null != e) {
+                if (log.isErrorEnabled())
+                    log.error("get and increment in failed for [cate {}] [ts {}] [range {}] in {}",
+                            category, ts, size, storage.getClass().getSimpleName(), e);
+                throw LOAD_CACHE_EXCEPTION;
+            }
+            return sequence(category, size, incrementedSeq);
+        }).toCompletableFuture();
+    }
+
+    private long leaseSize(long category, long range) {
+        return Math.max(sizer(category).size(), range);
+    }
+
+    private CacheSequence sequence(long category, long size, long incrementedSeq) {
+        metrics.leased((int) category & CATEGORY_MASK, size);
+        return new CacheSequence(incrementedSeq - size + START_SEQ, incrementedSeq, watermark);
+    }
+
+    /**
+     * Completes the sequence with {@value ILLEGAL_SEQ} if it is not loaded within the load
+     * timeout.
+     */
+    private CompletableFuture<Long> within(CompletableFuture<Long> seq, long category, long ts) {
+        if (seq.isDone())
+            return seq;
+
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (seq.complete(ILLEGAL_SEQ)) {
+                metrics.loadTimeout();
+                if (log.isWarnEnabled())
+                    log.warn("load segment of [cate {}] [ts {}] timed out in {} ms", category, ts,
+                            loadTimeout);
+            }
+        }, loadTimeout, TimeUnit.MILLISECONDS);
+        seq.whenComplete((s, e) -> timeout.cancel(false));
+        return seq;
+    }
+
+    /**
+     * A double buffer of {@link CacheSequence}: the current one serves the requests and the
+     * buffered one is leased in the background to take over once the current runs out.
+     */
+    private class Segment {
+
+        private final long category;
+        private final long ts;
+        private final Storage storage;
+        private final AtomicReference<CacheSequence> current;
+        private final AtomicReference<CompletableFuture<CacheSequence>> buffered =
+                new AtomicReference<>();
+        // the sequences consumed of the ones switched from
+        private final AtomicLong retired = new AtomicLong();
+        // carried over from the segment replaced, as they hold ranges of this key
+        private Stripe[] stripes;
+
+        Segment(CacheSequence current, long category, long ts, Storage storage) {
+            this.current = new AtomicReference<>(current);
+            this.category = category;
+            this.ts = ts;
+            this.storage = storage;
+            if (0 < SequenceCache.this.stripes) {
+                stripes = new Stripe[SequenceCache.this.stripes];
+                for (int i = 0; i < stripes.length; i++)
+                    stripes[i] = new Stripe();
+            } else {
+                stripes = null;
+            }
+        }
+
+        /**
+         * Called before the segment is published in place of the replaced one.
+         */
+        void adopt(Segment replaced) {
+            if (null != stripes && null != replaced.stripes)
+                stripes = replaced.stripes;
+        }
+
+        long next(long range) {
+            if (null == stripes)
+                return take(range, range, null);
+
+            Stripe stripe = stripes[stripe() & (stripes.length - 1)];
+            synchronized (stripe) {
+                long seq = stripe.next(range);
+                if (ILLEGAL_SEQ != seq)
+                    return seq;
+
+                // the rest of the stripe is given up, as it is too short for the range
+                return take(range, range * stripeRanges, stripe);
+            }
+        }
+
+        /**
+         * Takes a chunk of the current sequence, as much of it as is left but at least the range,
+         * and refills the stripe with the chunk after the range.
+         */
+        private long take(long range, long chunk, Stripe stripe) {
+            for (; ; ) {
+                CacheSequence sequence = current.get();
+                long seq = range == chunk ? sequence.next(range) : sequence.next(range, chunk);
+                if (ILLEGAL_SEQ != seq) {
+                    if (prefetchEnabled && seq >= sequence.watermark())
+                        prefetch();
+                    if (null != stripe)
+                        stripe.refill(seq + range, sequence.end(seq, chunk));
+                    return seq;
+                }
+
+                CompletableFuture<CacheSequence> next = buffered.get();
+                if (null == next || !next.isDone() || next.isCompletedExceptionally())
+                    return ILLEGAL_SEQ;
+                if (switchTo(sequence, next))
+                    metrics.prefetchHit();
+            }
+        }
+
+        /**
+         * Switches to the buffered segment once it lands.
+         *
+         * @return this segment, or null if there is no buffered segment or it fails to lease
+         */
+        CompletableFuture<Segment> whenBuffered() {
+            CacheSequence sequence = current.get();
+            CompletableFuture<CacheSequence> next = buffered.get();
+            if (null == next)
+                return CompletableFuture.completedFuture(null);
+            return next.handle((s, e) -> {
+                if (null != e)
+                    return null;
+                switchTo(sequence, next);
+                return this;
+            });
+        }
+
+        private boolean switchTo(CacheSequence sequence, CompletableFuture<CacheSequence> next) {
+            if (!current.compareAndSet(sequence, next.join()))
+                return false;
+            buffered.compareAndSet(next, null);
+            retired.addAndGet(sequence.consumed());
+            return true;
+        }
+
+        long consumed() {
+            return retired.get() + current.get().consumed();
+        }
+
+        private void prefetch() {
+            CompletableFuture<CacheSequence> next = new CompletableFuture<>();
+            if (!buffered.compareAndSet(null, next))
+                return;
+            lease(category, ts, 0L, storage).whenComplete((sequence, e) -> {
+                if (null != e) {
+                    if (log.isWarnEnabled())
+                        log.warn("prefetch segment failed for [cate {}] [ts {}]", category, ts,
+                                e);
+                    buffered.compareAndSet(next, null);
+                    next.completeExceptionally(e);
+                    return;
+                }
+                metrics.prefetchLoad();
+                next.complete(sequence);
+            });
+        }
+    }
+
+    /**
+     * A chunk of a segment owned by the threads mapped to it, padded against false sharing
+     * with the neighbouring stripes.
+     */
+    @SuppressWarnings("unused")
+    private static class Stripe {
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+        private long next = 1L;
+        private long limit = 0L;
+        private long q1, q2, q3, q4, q5, q6, q7;
+
+        long next(long range) {
+            if (next + range - 1 > limit)
+                return ILLEGAL_SEQ;
+            long seq = next;
+            next += range;
+            return seq;
+        }
+
+        void refill(long next, long limit) {
+            this.next = next;
+            this.limit = limit;
+        }
+    }
+
+    private static class Entry {
+
+        private volatile Segment segment;
+        private final AtomicReference<CompletableFuture<Segment>> loading =
+                new AtomicReference<>();
+        // the sequences consumed of the segments replaced
+        private final AtomicLong retired = new AtomicLong();
+
+        long consumed() {
+            Segment current = segment;
+            return retired.get() + (null == current ? 0L : current.consumed());
+        }
+    }
+
+    static class CacheSequence {
+
+        @Getter
+        private AtomicLong seq;
+
+        private final long start;
+        private final long seqLimit;
+        @Getter
+        private final long watermark;
+
+        CacheSequence(long seq, long seqLimit, double watermark) {
+            this.start = seq;
+            this.seq = new AtomicLong(seq);
+            this.seqLimit = seqLimit;
+            this.watermark = seq + (long) ((seqLimit - seq + 1) * watermark);
+        }
+
+        long next(long range) {
+            long next = seq.getAndAdd(range);
+            return next + range - 1 <= seqLimit ? next : ILLEGAL_SEQ;
+        }
+
+        /**
+         * Takes up to the chunk, but at least the range, without running past the limit, so
+         * that a chunk larger than what is left does not give up the rest of the sequence.
+         */
+        long next(long range, long chunk) {
+            for (; ; ) {
+                long next = seq.get();
+                long left = seqLimit - next + 1;
+                if (left < range)
+                    return ILLEGAL_SEQ;
+                if (seq.compareAndSet(next, next + Math.min(chunk, left)))
+                    return next;
+            }
+        }
+
+        /**
+         * @return the sequences handed out, including the chunks taken by the stripes
+         */
+        long consumed() {
+            return Math.min(seq.get(), seqLimit + 1) - start;
+        }
+
+        /**
+         * @return the last sequence of the chunk taken from the start
+         */
+        long end(long start, long chunk) {
+            return Math.min(start + chunk - 1, seqLimit);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.typesafe.config.Config;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -23,6 +24,8 @@ public class TimeWatcher {
     private static final int DEFAULT_MAX_DELAYED_SECONDS = 600;
     private static final String DELAY = "time.watcher.delay";
     private static final int DEFAULT_DELAY = 1;
+    private static final String LEAD = "time.watcher.lead.ms";
+    private static final long DEFAULT_LEAD = 200L;
     private static final long BEGINNING = 0;
 
     private AtomicBoolean started = new AtomicBoolean(false);
@@ -37,6 +40,8 @@ public class TimeWatcher {
     private List<Storage> storages;
     private int maxDelayed;
     private Map<String, Integer> instancesBox;
+    private long lead;
+    private List<TickListener> listeners = new CopyOnWriteArrayList<>();
 
     public TimeWatcher(Config config, List<Storage> storages, String localId,
                        Map<String, Integer> instancesBox) {
@@ -58,6 +63,7 @@ public class TimeWatcher {
                                                                    .setUncaughtExceptionHandler(
                                                                            handler);
         watchDelay = config.hasPath(DELAY) ? config.getInt(DELAY) : DEFAULT_DELAY;
+        lead = config.hasPath(LEAD) ? config.getLong(LEAD) : DEFAULT_LEAD;
         watchExecutor = Executors.newSingleThreadScheduledExecutor(builder.build());
     }
 
@@ -71,6 +77,19 @@ public class TimeWatcher {
                         log.error("", e);
                 }
             }, 0, watchDelay, TimeUnit.SECONDS);
+
+            long period = TimeUnit.SECONDS.toMillis(watchDelay);
+            if (0 < lead && lead < period) {
+                // fire the lead time before every watch except the first one
+                watchExecutor.scheduleAtFixedRate(() -> {
+                    try {
+                        beforeTick();
+                    } catch (Exception e) {
+                        if (log.isErrorEnabled())
+                            log.error("", e);
+                    }
+                }, period - lead, period, TimeUnit.MILLISECONDS);
+            }
         } else {
             if (log.isDebugEnabled())
                 log.debug("time watcher is already started");
@@ -107,6 +126,13 @@ public class TimeWatcher {
         return maxDelayed <= (local - fromLattice) ? local : fromLattice;
     }
 
+    /**
+     * Registers a listener which is told shortly before the available timestamp moves on.
+     */
+    public void addTickListener(TickListener listener) {
+        listeners.add(listener);
+    }
+
     public long instanceId() {
         Storage first = storages.get(0);
         return first.descriptor() + (long) instancesBox.get(first.type());
@@ -147,10 +173,42 @@ public class TimeWatcher {
         if (log.isDebugEnabled())
             log.debug("new max time is {}", maxTime);
         availableTimestamp.set(maxTime >= availableLocalTs ? maxTime : availableLocalTs);
+        tick();
 
         heartbeat();
     }
 
+    private void tick() {
+        if (listeners.isEmpty())
+            return;
+        long current = currentAvailableTimestamp();
+        for (TickListener listener : listeners) {
+            try {
+                listener.onTick(current);
+            } catch (Exception e) {
+                if (log.isErrorEnabled())
+                    log.error("tick listener failed on [ts {}]", current, e);
+            }
+        }
+    }
+
+    private void beforeTick() {
+        if (listeners.isEmpty())
+            return;
+        // the next watch moves the available timestamp on by the watch delay as long as the
+        // lattice keeps up with the local clock
+        long current = currentAvailableTimestamp();
+        long next = current + watchDelay;
+        for (TickListener listener : listeners) {
+            try {
+                listener.beforeTick(current, next);
+            } catch (Exception e) {
+                if (log.isErrorEnabled())
+                    log.error("tick listener failed at [ts {}]", current, e);
+            }
+        }
+    }
+
     private void heartbeat() {
         storages.forEach(
                 s -> s.heartbeat(instancesBox.get(s.type()), Storage.DEFAULT_HEARTBEAT_SECONDS));
@@ -179,4 +237,24 @@ public class TimeWatcher {
 
         return maxTime;
     }
+
+    public interface TickListener {
+
+        /**
+         * Called on the time watcher thread, so it should not block.
+         *
+         * @param current the available timestamp
+         * @param next    the available timestamp expected after the coming watch
+         */
+        void beforeTick(long current, long next);
+
+        /**
+         * Called on the time watcher thread once the available timestamp has moved on, so it
+         * should not block.
+         *
+         * @param current the available timestamp
+         */
+        default void onTick(long current) {
+        }
+    }
 }
@@ -7,7 +7,10 @@ import com.typesafe.config.Config;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.client.Delete;
@@ -21,15 +24,23 @@ import org.apache.hadoop.hbase.util.Bytes;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import io.cantor.service.clients.Parser;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -45,32 +56,45 @@ class HBaseStorage implements Storage {
     private static final byte[] SERVICE_FAMILY = Bytes.toBytes("svc");
     private static final byte[] INST_FAMILY = Bytes.toBytes("inst");
     private static final String NAMESPACE = "infra_pub";
-    private static final String TABLE_FMT = "id-gen-%s";
+    static final String TABLE_FMT = "id-gen-%s";
     private static final String META_TABLE = "id-gen-meta";
-    private static final String ROW_KEY_FMT = "%s";
-    private static final int TABLE_COUNT = 10;
     private static final int TABLE_OPERATION_TIMEOUT = 500; // ms
     private static final long DEFAULT_TTL = 86400L * 1000L; // ms
     private final byte[] HBASE_LATTICE_KEY = Bytes.toBytes("time_lattice");
     private static final String RUNNING_STATE_FMT = "running_state_%s";
+    private static final String ASYNC_THREADS = "hbase.async.threads";
+    private static final int DEFAULT_ASYNC_THREADS = 8;
+    private static final String BATCH_WINDOW = "hbase.batch.window.us";
+    private static final long DEFAULT_BATCH_WINDOW = 500L; // us
+    private static final String BATCH_MAX = "hbase.batch.max";
+    private static final int DEFAULT_BATCH_MAX = 256;
+    private static final String SALT_BUCKETS = "hbase.salt.buckets";
+    private static final int DEFAULT_SALT_BUCKETS = 1;
+    private static final String SALT_SINCE = "hbase.salt.since";
+    // the legacy layout until a cut-over second is set
+    private static final long DEFAULT_SALT_SINCE = Long.MAX_VALUE;
+    private static final String TABLE_CREATE = "hbase.table.create";
+    // the leases waiting for a batch, in batches
+    private static final int PENDING_BATCHES = 16;
+    private static final IllegalStateException INCREMENT_EXCEPTION = new IllegalStateException(
+            "[HBase] increment failed");
 
     private final int tableCount;
+    private final RowLayout layout;
     private final long ttl;
     private Connection connection;
     private Table metaTable;
     private Configuration hbaseConf;
-    private ConcurrentHashMap<String, Table> tableConnections = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Table> tableConnections;
     private ScheduledExecutorService executorService;
+    private ExecutorService asyncExecutor;
+    private LeaseBatcher batcher;
     private volatile boolean available = false;
     private String localId;
     private final byte[] hbaseTimeLatticeCol;
 
     HBaseStorage(Config config, String localId) throws Exception {
-        this.localId = localId;
-        this.hbaseTimeLatticeCol = Bytes.toBytes(localId);
-        tableCount = config.hasPath("hbase.table.count") ? config.getInt(
-                "hbase.table.count") : TABLE_COUNT;
-        ttl = config.hasPath("hbase.ttl") ? config.getLong("hbase.ttl") * 1000L : DEFAULT_TTL;
+        this(config, localId, new ConcurrentHashMap<>());
 
         hbaseConf = HBaseConfiguration.create();
         hbaseConf.set("hbase.client.retries.number", "1");
@@ -83,6 +107,8 @@ class HBaseStorage implements Storage {
                 config.getString("hbase.hconnection.threads.core"));
 
         connection = ConnectionFactory.createConnection(hbaseConf);
+        if (config.hasPath(TABLE_CREATE) && config.getBoolean(TABLE_CREATE))
+            createTables();
         createTableConnections(tableCount);
         metaTable = getTable(NAMESPACE, META_TABLE);
 
@@ -96,26 +122,62 @@ class HBaseStorage implements Storage {
                                                             })
                                                             .build();
         executorService = Executors.newSingleThreadScheduledExecutor(factory);
+
         checkConn();
         // tricky: check hbase again, interrupts the creation process by exceptions if it fails
         HBaseAdmin.checkHBaseAvailable(hbaseConf);
     }
 
     /**
-     * @return the value before increment
+     * Leases from the given tables, by their names, without connecting to HBase, so that the
+     * lease path can be measured against stand-in tables. Nothing but the leases is served.
+     */
+    HBaseStorage(Config config, String localId, ConcurrentHashMap<String, Table> tables) {
+        this.localId = localId;
+        this.hbaseTimeLatticeCol = Bytes.toBytes(localId);
+        tableCount = config.hasPath("hbase.table.count") ? config.getInt(
+                "hbase.table.count") : RowLayout.LEGACY_TABLE_COUNT;
+        int saltBuckets = config.hasPath(SALT_BUCKETS) ? config.getInt(
+                SALT_BUCKETS) : DEFAULT_SALT_BUCKETS;
+        // the cut-over is an epoch second, the seconds of the leases are relative to the start
+        long saltSince = config.hasPath(SALT_SINCE) ? config.getLong(
+                SALT_SINCE) - Parser.START_EPOCH : DEFAULT_SALT_SINCE;
+        layout = new RowLayout(tableCount, saltBuckets, saltSince);
+        ttl = config.hasPath("hbase.ttl") ? config.getLong("hbase.ttl") * 1000L : DEFAULT_TTL;
+
+        tableConnections = tables;
+
+        // hbase-client 1.x has no asynchronous table, the blocking increments run on their own
+        // threads instead of the callers', a thread per batch of leases when batching is on
+        int asyncThreads = config.hasPath(ASYNC_THREADS) ? config.getInt(
+                ASYNC_THREADS) : DEFAULT_ASYNC_THREADS;
+        asyncExecutor = Executors.newFixedThreadPool(asyncThreads,
+                (new ThreadFactoryBuilder()).setDaemon(false)
+                                            .setNameFormat("hbase-async-%s")
+                                            .setUncaughtExceptionHandler((t, e) -> {
+                                                if (log.isErrorEnabled())
+                                                    log.error("hbase async thread error [thread {}]",
+                                                            t.getId(), e);
+                                            })
+                                            .build());
+        long batchWindow = config.hasPath(BATCH_WINDOW) ? config.getLong(
+                BATCH_WINDOW) : DEFAULT_BATCH_WINDOW;
+        int batchMax = config.hasPath(BATCH_MAX) ? config.getInt(BATCH_MAX) : DEFAULT_BATCH_MAX;
+        if (batchWindow > 0 && batchMax > 1)
+            batcher = new LeaseBatcher(TimeUnit.MICROSECONDS.toNanos(batchWindow), batchMax,
+                    batchMax * PENDING_BATCHES, this::flush, asyncExecutor);
+    }
+
+    /**
+     * @return the value after increment
      */
     @Override
     public Optional<Long> incrementAndGet(long category, long ts, long range) {
-        String tbl = String.format(TABLE_FMT, category % TABLE_COUNT);
-        Table table = tableConnections.get(tbl);
+        Table table = table(category, ts);
 
         try {
-            Increment increment = new Increment(Bytes.toBytes(String.format(ROW_KEY_FMT, ts)));
-            increment.setTTL(ttl);
-            byte[] col = Bytes.toBytes(String.valueOf(category));
-            increment.addColumn(SERVICE_FAMILY, col, range);
-            Result result = table.increment(increment);
-            Long afterInc = Bytes.toLong(result.getValue(SERVICE_FAMILY, col));
+            Result result = table.increment(increment(category, ts, range));
+            Long afterInc = Bytes.toLong(result.getValue(SERVICE_FAMILY, column(category)));
 
             return Optional.of(afterInc);
         } catch (Exception e) {
@@ -127,11 +189,64 @@ class HBaseStorage implements Storage {
         }
     }
 
+    /**
+     * Leased in a batch with the other categories leased in the same window, if batching is on.
+     */
+    @Override
+    public CompletionStage<Long> incrementAndGetAsync(long category, long ts, long range) {
+        if (null != batcher)
+            return batcher.lease(category, ts, range);
+        try {
+            return CompletableFuture.supplyAsync(() -> incrementAndGet(category, ts, range),
+                    asyncExecutor).thenApply(opt -> opt.orElseThrow(() -> INCREMENT_EXCEPTION));
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Leased through the batches of the single categories, if batching is on, so the threads
+     * blocked on increments are bounded by the batches in flight rather than by the callers.
+     */
+    @Override
+    public CompletionStage<long[]> incrementAndGetAsync(long[] categories, long ts,
+                                                        long[] ranges) {
+        if (null != batcher)
+            return leaseAll(categories, ts, ranges);
+        CompletableFuture<long[]> future = new CompletableFuture<>();
+        try {
+            asyncExecutor.execute(() -> {
+                try {
+                    future.complete(incrementAndGet(categories, ts, ranges));
+                } catch (Exception e) {
+                    if (log.isErrorEnabled())
+                        log.error("increment range values failed for [ categories: {} ] "
+                                        + "[ timestamp {} ] [ ranges {} ]",
+                                Arrays.toString(categories), ts, Arrays.toString(ranges), e);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     @Override
     public void close() {
+        if (null != batcher) {
+            batcher.close();
+        }
         if (null != executorService) {
             executorService.shutdownNow();
         }
+        if (null != asyncExecutor) {
+            List<Runnable> dropped = asyncExecutor.shutdownNow();
+            if (null != batcher)
+                batcher.dropped(dropped);
+        }
         tableConnections.forEach((tname, tbl) -> {
             try {
                 tbl.close();
@@ -284,6 +399,119 @@ class HBaseStorage implements Storage {
         }
     }
 
+    private long[] incrementAndGet(long[] categories, long ts, long[] ranges) throws Exception {
+        long[] timestamps = new long[categories.length];
+        Arrays.fill(timestamps, ts);
+        return incrementAndGet(categories, timestamps, ranges);
+    }
+
+    /**
+     * Increments in one batch per table, of a single increment per row with a column for every
+     * category leased on the row. The ranges of a category leased more than once on a row are
+     * summed into its column, and each lease gets the value after its own range, as if they were
+     * incremented one after another.
+     */
+    private long[] incrementAndGet(long[] categories, long[] timestamps,
+                                   long[] ranges) throws Exception {
+        Map<Table, Map<String, List<Integer>>> indexesByRow = new HashMap<>();
+        for (int i = 0; i < categories.length; i++)
+            indexesByRow.computeIfAbsent(table(categories[i], timestamps[i]), t -> new HashMap<>())
+                        .computeIfAbsent(layout.row(categories[i], timestamps[i]),
+                                r -> new ArrayList<>())
+                        .add(i);
+
+        long[] afterIncs = new long[categories.length];
+        for (Map.Entry<Table, Map<String, List<Integer>>> entry : indexesByRow.entrySet()) {
+            List<Increment> increments = new ArrayList<>(entry.getValue().size());
+            List<List<Integer>> rows = new ArrayList<>(entry.getValue().size());
+            for (Map.Entry<String, List<Integer>> row : entry.getValue().entrySet()) {
+                Map<Long, Long> sums = new HashMap<>();
+                for (int i : row.getValue())
+                    sums.merge(categories[i], ranges[i], Long::sum);
+                Increment increment = new Increment(Bytes.toBytes(row.getKey()));
+                increment.setTTL(ttl);
+                sums.forEach((category, sum) -> increment.addColumn(SERVICE_FAMILY,
+                        column(category), sum));
+                increments.add(increment);
+                rows.add(row.getValue());
+            }
+
+            Object[] results = new Object[increments.size()];
+            entry.getKey().batch(increments, results);
+            for (int j = 0; j < results.length; j++) {
+                Result result = (Result) results[j];
+                List<Integer> indexes = rows.get(j);
+                // the last lease of a category gets the value of the column, the one before it
+                // the value before the range of the last, and so on
+                Map<Long, Long> afters = new HashMap<>();
+                for (int k = indexes.size() - 1; k >= 0; k--) {
+                    int i = indexes.get(k);
+                    Long after = afters.get(categories[i]);
+                    if (null == after)
+                        after = Bytes.toLong(result.getValue(SERVICE_FAMILY,
+                                column(categories[i])));
+                    afterIncs[i] = after;
+                    afters.put(categories[i], after - ranges[i]);
+                }
+            }
+        }
+        return afterIncs;
+    }
+
+    private CompletionStage<long[]> leaseAll(long[] categories, long ts, long[] ranges) {
+        List<CompletableFuture<Long>> leases = new ArrayList<>(categories.length);
+        for (int i = 0; i < categories.length; i++)
+            leases.add(batcher.lease(categories[i], ts, ranges[i]).toCompletableFuture());
+
+        return CompletableFuture.allOf(leases.toArray(new CompletableFuture[0])).thenApply(v -> {
+            long[] afterIncs = new long[leases.size()];
+            for (int i = 0; i < afterIncs.length; i++)
+                afterIncs[i] = leases.get(i).join();
+            return afterIncs;
+        });
+    }
+
+    private void flush(List<LeaseBatcher.Lease> batch) {
+        long[] categories = new long[batch.size()];
+        long[] timestamps = new long[batch.size()];
+        long[] ranges = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            LeaseBatcher.Lease lease = batch.get(i);
+            categories[i] = lease.category;
+            timestamps[i] = lease.ts;
+            ranges[i] = lease.range;
+        }
+
+        try {
+            long[] afterIncs = incrementAndGet(categories, timestamps, ranges);
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).future.complete(afterIncs[i]);
+        } catch (Exception e) {
+            if (log.isErrorEnabled())
+                log.error("increment a batch of {} leases failed for [ categories: {} ] "
+                                + "[ timestamps {} ] [ ranges {} ]", batch.size(),
+                        Arrays.toString(categories), Arrays.toString(timestamps),
+                        Arrays.toString(ranges), e);
+            for (LeaseBatcher.Lease lease : batch)
+                lease.future.completeExceptionally(e);
+        }
+    }
+
+    private Table table(long category, long ts) {
+        return tableConnections.get(String.format(TABLE_FMT, layout.table(category, ts)));
+    }
+
+    private Increment increment(long category, long ts, long range) {
+        Increment increment = new Increment(Bytes.toBytes(layout.row(category, ts)));
+        increment.setTTL(ttl);
+        increment.addColumn(SERVICE_FAMILY, column(category), range);
+        return increment;
+    }
+
+    private static byte[] column(long category) {
+        return Bytes.toBytes(String.valueOf(category));
+    }
+
     private Table getTable(String namespace, String tableName) throws Exception {
         Table table = connection.getTable(TableName.valueOf(namespace, tableName));
         table.setOperationTimeout(TABLE_OPERATION_TIMEOUT);
@@ -317,8 +545,34 @@ class HBaseStorage implements Storage {
         executorService.schedule(this::checkConn, CHECK_ACTIVE_DELAY, TimeUnit.SECONDS);
     }
 
+    /**
+     * Creates the tables which do not exist yet, split at the salt buckets. The existing ones are
+     * left as they are.
+     */
+    private void createTables() throws IOException {
+        try (Admin admin = connection.getAdmin()) {
+            byte[][] splits = layout.splitKeys();
+            for (int i = 0; i < tableCount; i++) {
+                TableName name = TableName.valueOf(NAMESPACE, String.format(TABLE_FMT, i));
+                if (admin.tableExists(name))
+                    continue;
+                HTableDescriptor descriptor = new HTableDescriptor(name);
+                descriptor.addFamily(new HColumnDescriptor(SERVICE_FAMILY).setMaxVersions(1));
+                if (0 == splits.length)
+                    admin.createTable(descriptor);
+                else
+                    admin.createTable(descriptor, splits);
+                if (log.isInfoEnabled())
+                    log.info("[HBase] created table {} in {} regions", name, splits.length + 1);
+            }
+        }
+    }
+
+    /**
+     * Opens the tables of the legacy layout as well, for the seconds before the salted one.
+     */
     private void createTableConnections(int tableCount) throws Exception {
-        for (int i = 0; i < tableCount; i++) {
+        for (int i = 0; i < Math.max(tableCount, RowLayout.LEGACY_TABLE_COUNT); i++) {
             String tbl = String.format(TABLE_FMT, i);
             // default queue for batch in HTable is the LinkedBlockingQueue
             Table table = getTable(NAMESPACE, tbl);
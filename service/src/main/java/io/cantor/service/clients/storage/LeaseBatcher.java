@@ -0,0 +1,172 @@
+package io.cantor.service.clients.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects the leases of single categories for a short window after the first of them, or until
+ * enough of them are pending, and hands them to the flusher together, which completes every one.
+ * <p>
+ * The batches are flushed on the given executor, so the next batch is collected while the
+ * previous one is still in flight. Once closed, every lease pending or offered later fails, and
+ * so do the ones of the flushes {@link #dropped dropped} by the executor.
+ */
+@Slf4j
+class LeaseBatcher {
+
+    private static final String THREAD_NAME_FORMAT = "lease-batcher-%s";
+    private static final IllegalStateException CLOSED_EXCEPTION = new IllegalStateException(
+            "lease batcher closed");
+    private static final IllegalStateException FULL_EXCEPTION = new IllegalStateException(
+            "too many pending leases");
+
+    static final class Lease {
+
+        final long category;
+        final long ts;
+        final long range;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private Lease(long category, long ts, long range) {
+            this.category = category;
+            this.ts = ts;
+            this.range = range;
+        }
+    }
+
+    private final long windowNanos;
+    private final int maxBatch;
+    private final Consumer<List<Lease>> flusher;
+    private final Executor executor;
+    private final BlockingQueue<Lease> pending;
+    private final Thread collector;
+    private volatile boolean closed = false;
+
+    /**
+     * @param windowNanos how long a batch waits for more leases after its first one
+     * @param maxBatch    the leases of a batch, which is flushed at once when it is full
+     * @param maxPending  the leases waiting for a batch, the ones above it fail at once
+     * @param flusher     completes the future of every lease of a batch
+     */
+    LeaseBatcher(long windowNanos, int maxBatch, int maxPending, Consumer<List<Lease>> flusher,
+                 Executor executor) {
+        this.windowNanos = windowNanos;
+        this.maxBatch = maxBatch;
+        this.flusher = flusher;
+        this.executor = executor;
+        this.pending = new ArrayBlockingQueue<>(maxPending);
+        collector = (new ThreadFactoryBuilder()).setDaemon(true)
+                                                .setNameFormat(THREAD_NAME_FORMAT)
+                                                .setUncaughtExceptionHandler((t, e) -> {
+                                                    if (log.isErrorEnabled())
+                                                        log.error(
+                                                                "lease batcher thread error [thread {}]",
+                                                                t.getId(), e);
+                                                })
+                                                .build()
+                                                .newThread(this::collect);
+        collector.start();
+    }
+
+    CompletionStage<Long> lease(long category, long ts, long range) {
+        Lease lease = new Lease(category, ts, range);
+        if (closed) {
+            lease.future.completeExceptionally(CLOSED_EXCEPTION);
+        } else if (!pending.offer(lease)) {
+            lease.future.completeExceptionally(FULL_EXCEPTION);
+        } else if (closed && pending.remove(lease)) {
+            // offered after the collector took the last of the pending leases
+            lease.future.completeExceptionally(CLOSED_EXCEPTION);
+        }
+        return lease.future;
+    }
+
+    void close() {
+        closed = true;
+        collector.interrupt();
+    }
+
+    /**
+     * Fails the leases of the flushes among the tasks which the executor dropped on shutdown.
+     */
+    void dropped(List<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            if (task instanceof Flush)
+                fail(((Flush) task).batch, CLOSED_EXCEPTION);
+        }
+    }
+
+    private void collect() {
+        List<Lease> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    pending.drainTo(batch, maxBatch - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || left <= 0)
+                        break;
+                    Lease lease = pending.poll(left, TimeUnit.NANOSECONDS);
+                    if (null == lease)
+                        break;
+                    batch.add(lease);
+                }
+            } catch (InterruptedException e) {
+                closed = true;
+            }
+            if (!batch.isEmpty()) {
+                flush(new ArrayList<>(batch));
+                batch.clear();
+            }
+        }
+
+        pending.drainTo(batch);
+        fail(batch, CLOSED_EXCEPTION);
+    }
+
+    private void flush(List<Lease> batch) {
+        try {
+            executor.execute(new Flush(batch));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    private static void fail(List<Lease> batch, Throwable cause) {
+        for (Lease lease : batch)
+            lease.future.completeExceptionally(cause);
+    }
+
+    private class Flush implements Runnable {
+
+        private final List<Lease> batch;
+
+        Flush(List<Lease> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                flusher.accept(batch);
+            } catch (RuntimeException e) {
+                if (log.isErrorEnabled())
+                    log.error("flush a batch of {} leases failed", batch.size(), e);
+                fail(batch, e);
+            }
+        }
+    }
+}
@@ -6,18 +6,33 @@ import com.typesafe.config.Config;
 
 import java.net.ConnectException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.jedis.Jedis;
-
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Keeps the sequences in Redis through a bounded pool of connections, so that the increments of
+ * all compute loops, the probe and the time sync proceed in parallel, each on a connection of
+ * its own, up to {@code redis.pool.size} of them. The segments of one or more categories are
+ * leased by a script, which increments them and sets the ttl of their timestamp atomically in a
+ * single round trip.
+ */
 @Slf4j
 class RedisStorage implements Storage {
 
@@ -35,15 +50,38 @@ class RedisStorage implements Storage {
     private static final long BEGINNING = 0;
     private static final String TIMESTAMP_KEY = "time_lattice";
     private static final String INSTANCES_INDEX = "instances_index";
+    private static final IllegalStateException INCREMENT_EXCEPTION = new IllegalStateException(
+            "[Redis] increment failed");
+
+    // increments the fields of the hash KEYS[1] by the ranges and sets its ttl if it has none,
+    // ARGV[1] is the ttl followed by the pairs of field and range
+    private static final String LEASE_SCRIPT = "local afters = {}\n"
+            + "for i = 2, #ARGV, 2 do\n"
+            + "  afters[#afters + 1] = redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])\n"
+            + "end\n"
+            + "if redis.call('TTL', KEYS[1]) < 0 then\n"
+            + "  redis.call('EXPIRE', KEYS[1], ARGV[1])\n"
+            + "end\n"
+            + "return afters\n";
+    private static final String NO_SCRIPT = "NOSCRIPT";
+
+    private static final String POOL_SIZE = "redis.pool.size";
+    private static final String POOL_MAX_WAIT = "redis.pool.max.wait.ms";
+    private static final String TIMEOUT = "redis.timeout.ms";
+    private static final long DEFAULT_POOL_MAX_WAIT = 1000L;
 
     private final int ttl;
     private final String host;
     private final int port;
-    private volatile Jedis jedis;
+    private final int poolSize;
+    private final long poolMaxWait;
+    private final int timeout;
+    private volatile JedisPool pool;
+    private volatile String leaseSha;
     private ScheduledExecutorService executorService;
+    private ExecutorService asyncExecutor;
     private volatile boolean active = false;
     private String localId;
-    private AtomicBoolean ok = new AtomicBoolean(true);
 
     RedisStorage(Config config, String localId) throws Exception {
         this.localId = localId;
@@ -51,6 +89,12 @@ class RedisStorage implements Storage {
         this.port = config.getInt("redis.port");
 
         this.ttl = config.hasPath("redis.ttl") ? config.getInt("redis.ttl") : DEFAULT_TTL;
+        // a connection for every compute loop, which is one per processor by default
+        this.poolSize = config.hasPath(POOL_SIZE) ? config.getInt(POOL_SIZE)
+                                                  : Runtime.getRuntime().availableProcessors();
+        this.poolMaxWait = config.hasPath(POOL_MAX_WAIT) ? config.getLong(POOL_MAX_WAIT)
+                                                         : DEFAULT_POOL_MAX_WAIT;
+        this.timeout = config.hasPath(TIMEOUT) ? config.getInt(TIMEOUT) : Protocol.DEFAULT_TIMEOUT;
         ThreadFactory factory = (new ThreadFactoryBuilder()).setDaemon(false)
                                                             .setNameFormat("redis-probe-%s")
                                                             .setUncaughtExceptionHandler((t, e) -> {
@@ -61,6 +105,17 @@ class RedisStorage implements Storage {
                                                             })
                                                             .build();
         executorService = Executors.newSingleThreadScheduledExecutor(factory);
+        // jedis is blocking, so the asynchronous increments run on as many threads as there are
+        // connections
+        asyncExecutor = Executors.newFixedThreadPool(poolSize,
+                (new ThreadFactoryBuilder()).setDaemon(false)
+                                            .setNameFormat("redis-async-%s")
+                                            .setUncaughtExceptionHandler((t, e) -> {
+                                                if (log.isErrorEnabled())
+                                                    log.error("redis async thread error [thread {}]",
+                                                            t.getId(), e);
+                                            })
+                                            .build());
         active = connect();
         if (!active) {
             throw new ConnectException("can not connect to Redis");
@@ -71,25 +126,38 @@ class RedisStorage implements Storage {
 
     @Override
     public Optional<Long> incrementAndGet(long category, long ts, long range) {
-        if (!available())
-            return Optional.empty();
-
-        String timestampKey = String.format(TIMESTAMP_KEY_FMT, ts);
+        return incrementAndGet(new long[]{category}, ts, new long[]{range})
+                .map(afters -> afters[0]);
+    }
 
-        Long after = null;
-        checkBusyAndBlock();
+    @Override
+    public CompletionStage<Long> incrementAndGetAsync(long category, long ts, long range) {
         try {
-            after = jedis.hincrBy(timestampKey, String.format("cate-%s", category), range);
-            if (range == after)
-                jedis.expire(timestampKey, ttl);
-
-        } catch (Exception e) {
-            if (log.isErrorEnabled())
-                log.error("connect to redis failed", e);
+            return CompletableFuture.supplyAsync(() -> incrementAndGet(category, ts, range),
+                    asyncExecutor).thenApply(opt -> opt.orElseThrow(() -> INCREMENT_EXCEPTION));
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
         }
+    }
 
-        release();
-        return Optional.ofNullable(after);
+    @Override
+    public CompletionStage<long[]> incrementAndGetAsync(long[] categories, long ts,
+                                                        long[] ranges) {
+        CompletableFuture<long[]> future = new CompletableFuture<>();
+        try {
+            asyncExecutor.execute(() -> {
+                Optional<long[]> opt = incrementAndGet(categories, ts, ranges);
+                if (opt.isPresent())
+                    future.complete(opt.get());
+                else
+                    future.completeExceptionally(INCREMENT_EXCEPTION);
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
     }
 
     @Override
@@ -97,14 +165,17 @@ class RedisStorage implements Storage {
         if (null != executorService) {
             executorService.shutdownNow();
         }
-        if (null != jedis) {
-            jedis.close();
+        if (null != asyncExecutor) {
+            asyncExecutor.shutdownNow();
+        }
+        if (null != pool) {
+            pool.close();
         }
     }
 
     @Override
     public boolean available() {
-        return active && null != jedis && jedis.isConnected();
+        return active && null != pool && !pool.isClosed();
     }
 
     @Override
@@ -140,8 +211,7 @@ class RedisStorage implements Storage {
     public List<Long> timeMeta() {
         List<Long> times = new ArrayList<>();
 
-        checkBusyAndBlock();
-        try {
+        try (Jedis jedis = pool.getResource()) {
             Map<String, String> result = jedis.hgetAll(TIMESTAMP_KEY);
             if (null != result && !result.isEmpty())
                 result.forEach((id, ts) -> times.add(Long.valueOf(ts)));
@@ -152,7 +222,6 @@ class RedisStorage implements Storage {
         }
 
         log.info("Done in TimeMeta Redis");
-        release();
         return times;
     }
 
@@ -181,7 +250,7 @@ class RedisStorage implements Storage {
         int i = 0;
         int instanceNumber = ILLEGAL_INSTANCE;
         while (i < maxInstances) {
-            try {
+            try (Jedis jedis = pool.getResource()) {
                 String key = String.format(RUNNING_STATE_FMT, i);
                 Long state = jedis.incr(key);
                 if (null != state && state == REGISTERED) {
@@ -205,8 +274,7 @@ class RedisStorage implements Storage {
 
     @Override
     public boolean heartbeat(int instanceNumber, int ttl) {
-        try {
-            checkBusyAndBlock();
+        try (Jedis jedis = pool.getResource()) {
             String key = String.format(RUNNING_STATE_FMT, instanceNumber);
             Long after = jedis.expire(key, ttl);
             if (null == after) {
@@ -214,43 +282,73 @@ class RedisStorage implements Storage {
                     log.warn("[Redis] Failed to update the heartbeat expired time for {}",
                             instanceNumber);
 
-                release();
                 return false;
             }
 
-            release();
             return true;
         } catch (Exception e) {
             if (log.isErrorEnabled())
                 log.error("[Redis] Failed to heartbeat");
 
-            release();
             return false;
         }
     }
 
-    private void checkBusyAndBlock() {
-        while (!ok.compareAndSet(true, false)) {
-            try {
-                TimeUnit.NANOSECONDS.sleep(100);
-            } catch (InterruptedException e) {
-                if (log.isErrorEnabled())
-                    log.error("", e);
+    /**
+     * Increments the categories and sets the ttl of the timestamp atomically, in one round trip
+     * by the lease script.
+     */
+    private Optional<long[]> incrementAndGet(long[] categories, long ts, long[] ranges) {
+        if (!available())
+            return Optional.empty();
 
-                release();
-                Thread.currentThread().interrupt();
-            }
+        List<String> keys = Collections.singletonList(String.format(TIMESTAMP_KEY_FMT, ts));
+        List<String> args = new ArrayList<>(1 + 2 * categories.length);
+        args.add(String.valueOf(ttl));
+        for (int i = 0; i < categories.length; i++) {
+            args.add(String.format("cate-%s", categories[i]));
+            args.add(String.valueOf(ranges[i]));
         }
+
+        long[] afters = null;
+        try (Jedis jedis = pool.getResource()) {
+            List<?> results = (List<?>) lease(jedis, keys, args);
+            afters = new long[categories.length];
+            for (int i = 0; i < categories.length; i++)
+                afters[i] = (Long) results.get(i);
+        } catch (Exception e) {
+            if (log.isErrorEnabled())
+                log.error("connect to redis failed", e);
+            afters = null;
+        }
+
+        return Optional.ofNullable(afters);
     }
 
-    private void release() {
-        ok.compareAndSet(false, true);
+    /**
+     * Runs the lease script by its digest, which is loaded on the first lease, and loaded again
+     * if the server has lost it, e.g. by a restart or a failover.
+     */
+    private Object lease(Jedis jedis, List<String> keys, List<String> args) {
+        String sha = leaseSha;
+        if (null == sha) {
+            sha = jedis.scriptLoad(LEASE_SCRIPT);
+            leaseSha = sha;
+        }
+        try {
+            return jedis.evalsha(sha, keys, args);
+        } catch (JedisDataException e) {
+            if (null == e.getMessage() || !e.getMessage().startsWith(NO_SCRIPT))
+                throw e;
+            sha = jedis.scriptLoad(LEASE_SCRIPT);
+            leaseSha = sha;
+            return jedis.evalsha(sha, keys, args);
+        }
     }
 
     private Optional<String> getField(String key, String field) {
         String result = null;
-        checkBusyAndBlock();
-        try {
+        try (Jedis jedis = pool.getResource()) {
             result = jedis.hget(key, field);
             if (null == result || NULL.equals(result))
                 result = null;
@@ -260,60 +358,55 @@ class RedisStorage implements Storage {
                 log.error(String.format("[Redis] Failed to get key: %s, field: %s", key, field), e);
         }
 
-        release();
         return Optional.ofNullable(result);
     }
 
     private void setField(String key, String field, String value) {
-        checkBusyAndBlock();
-        try {
+        try (Jedis jedis = pool.getResource()) {
             jedis.hset(key, field, value);
         } catch (Exception e) {
             if (log.isErrorEnabled())
                 log.error(String.format("[Redis] HSet failed, key: %s, field :%s, value: %s", key,
                         field, value));
         }
-
-        release();
     }
 
     private void deleteField(String key, String field) {
-
-        checkBusyAndBlock();
-        try {
+        try (Jedis jedis = pool.getResource()) {
             jedis.hdel(key, field);
         } catch (Exception e) {
             if (log.isErrorEnabled())
                 log.error(String.format("[Redis] Failed to HDel, key: %s, field: %s", key, field),
                         e);
         }
-
-        release();
     }
 
+    /**
+     * Pings on a connection of the pool, which replaces a broken connection by itself, so the
+     * storage is only marked unavailable until a ping succeeds again.
+     */
     private void checkConn() {
         log.info("[Redis] Check redis connections");
-        if (null == jedis) {
+        if (null == pool) {
             active = false;
             active = connect();
         }
 
-        checkBusyAndBlock();
-        String resp = jedis.ping();
-        if (!PONG_RESPONSE.equals(resp)) {
+        try (Jedis jedis = pool.getResource()) {
+            active = PONG_RESPONSE.equals(jedis.ping());
+        } catch (Exception e) {
+            if (log.isWarnEnabled())
+                log.warn("[Redis] ping failed", e);
             active = false;
-            active = connect();
         }
-
-        release();
     }
 
     private synchronized boolean connect() {
         boolean success = false;
-        if (null != this.jedis) {
+        if (null != this.pool) {
             try {
                 log.info("reconnect to Redis");
-                this.jedis.close();
+                this.pool.close();
             } catch (Exception e) {
                 if (log.isErrorEnabled())
                     log.error("Can not connect to Redis", e);
@@ -321,7 +414,11 @@ class RedisStorage implements Storage {
         }
 
         try {
-            this.jedis = new Jedis(host, port);
+            JedisPoolConfig poolConfig = new JedisPoolConfig();
+            poolConfig.setMaxTotal(poolSize);
+            poolConfig.setMaxIdle(poolSize);
+            poolConfig.setMaxWaitMillis(poolMaxWait);
+            this.pool = new JedisPool(poolConfig, host, port, timeout);
             success = true;
         } catch (Exception e) {
             if (log.isErrorEnabled())
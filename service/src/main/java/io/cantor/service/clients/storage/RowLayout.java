@@ -0,0 +1,72 @@
+package io.cantor.service.clients.storage;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Where the counter of a category in a second lives: the table picked by the category, and the
+ * row of the second in that table, prefixed by a salt bucket derived from the category, so the
+ * categories of a second spread over the regions of a table split at the buckets instead of all
+ * hitting the region holding the latest second. The categories of a table take the buckets in
+ * turn, so the buckets of a table hold as many of them as each other, give or take one.
+ * <p>
+ * The layout takes effect from a second on, the counters of the seconds before it stay where the
+ * legacy layout put them: a table picked by {@value #LEGACY_TABLE_COUNT} and the bare second as
+ * the row. The counters expire with the TTL of the rows, so nothing has to be copied once every
+ * instance runs with the same layout before the second comes.
+ */
+class RowLayout {
+
+    static final int LEGACY_TABLE_COUNT = 10;
+    static final int MAX_BUCKETS = 256;
+
+    private static final String LEGACY_ROW_FMT = "%s";
+    private static final String BUCKET_FMT = "%02x";
+    private static final String SALTED_ROW_FMT = BUCKET_FMT + "-%s";
+
+    private final int tableCount;
+    private final int buckets;
+    private final long since;
+
+    /**
+     * @param buckets the salt buckets of the rows, 1 leaves the rows unsalted
+     * @param since   the first second laid out by the table count and the buckets, relative to
+     *                {@link io.cantor.service.clients.Parser#START_EPOCH} like the seconds of
+     *                the leases
+     */
+    RowLayout(int tableCount, int buckets, long since) {
+        if (tableCount < 1)
+            throw new IllegalArgumentException("table count must be positive: " + tableCount);
+        if (buckets < 1 || buckets > MAX_BUCKETS)
+            throw new IllegalArgumentException(
+                    String.format("salt buckets must be in [1, %s]: %s", MAX_BUCKETS, buckets));
+        this.tableCount = tableCount;
+        this.buckets = buckets;
+        this.since = since;
+    }
+
+    int table(long category, long ts) {
+        return (int) Math.floorMod(category, (long) (ts < since ? LEGACY_TABLE_COUNT : tableCount));
+    }
+
+    String row(long category, long ts) {
+        if (ts < since || 1 == buckets)
+            return String.format(LEGACY_ROW_FMT, ts);
+        return String.format(SALTED_ROW_FMT, bucket(category), ts);
+    }
+
+    int bucket(long category) {
+        // the categories of a table are congruent modulo the table count, their quotients are
+        // consecutive
+        return (int) Math.floorMod(Math.floorDiv(category, (long) tableCount), (long) buckets);
+    }
+
+    /**
+     * @return the keys a table is split at, a region per bucket
+     */
+    byte[][] splitKeys() {
+        byte[][] splits = new byte[buckets - 1][];
+        for (int i = 1; i < buckets; i++)
+            splits[i - 1] = Bytes.toBytes(String.format(BUCKET_FMT, i));
+        return splits;
+    }
+}
@@ -2,6 +2,7 @@ package io.cantor.service.clients.storage;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletionStage;
 
 public interface Storage {
 
@@ -10,6 +11,21 @@ public interface Storage {
 
     Optional<Long> incrementAndGet(long category, long ts, long range);
 
+    /**
+     * Increments without blocking the caller.
+     *
+     * @return the value after increment, which completes exceptionally if the increment fails
+     */
+    CompletionStage<Long> incrementAndGetAsync(long category, long ts, long range);
+
+    /**
+     * Increments the categories of the timestamp together, by the ranges of the same index.
+     *
+     * @return the values after increment in the order of the categories, which completes
+     * exceptionally if any increment fails
+     */
+    CompletionStage<long[]> incrementAndGetAsync(long[] categories, long ts, long[] ranges);
+
     void close();
 
     boolean available();
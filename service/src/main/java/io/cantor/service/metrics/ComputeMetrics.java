@@ -0,0 +1,45 @@
+package io.cantor.service.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.cantor.http.ComputeEventLoopMetrics;
+
+public class ComputeMetrics implements ComputeMetricsMXBean {
+
+    private static final String TYPE = "Compute";
+
+    private final ComputeEventLoopMetrics metrics;
+
+    private ComputeMetrics(ComputeEventLoopMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public static ComputeMetrics create(ComputeEventLoopMetrics metrics) {
+        return Metrics.register(TYPE, new ComputeMetrics(metrics));
+    }
+
+    @Override
+    public long getIdleTimeMs() {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.idleNanos());
+    }
+
+    @Override
+    public long getParks() {
+        return metrics.parks();
+    }
+
+    @Override
+    public long getWakeups() {
+        return metrics.wakeups();
+    }
+
+    @Override
+    public long getMeanWakeupLatencyUs() {
+        return TimeUnit.NANOSECONDS.toMicros(metrics.meanWakeupNanos());
+    }
+
+    @Override
+    public long getMaxWakeupLatencyUs() {
+        return TimeUnit.NANOSECONDS.toMicros(metrics.maxWakeupNanos());
+    }
+}
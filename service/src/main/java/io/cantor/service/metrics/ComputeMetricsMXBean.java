@@ -0,0 +1,29 @@
+package io.cantor.service.metrics;
+
+public interface ComputeMetricsMXBean {
+
+    /**
+     * @return milliseconds the compute loops spent without a task to run
+     */
+    long getIdleTimeMs();
+
+    /**
+     * @return times the compute loops parked while idle
+     */
+    long getParks();
+
+    /**
+     * @return times a parked compute loop was woken up by a submitted task
+     */
+    long getWakeups();
+
+    /**
+     * @return the mean microseconds from a submitted task to the woken loop running
+     */
+    long getMeanWakeupLatencyUs();
+
+    /**
+     * @return the longest microseconds from a submitted task to the woken loop running
+     */
+    long getMaxWakeupLatencyUs();
+}
@@ -0,0 +1,60 @@
+package io.cantor.service.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.cantor.http.EventLoopMetrics;
+
+public class LoopMetrics implements LoopMetricsMXBean {
+
+    private static final String TYPE = "Loop";
+
+    private final EventLoopMetrics metrics;
+
+    private LoopMetrics(EventLoopMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public static LoopMetrics create(EventLoopMetrics metrics) {
+        return Metrics.register(TYPE, metrics.name(), new LoopMetrics(metrics));
+    }
+
+    @Override
+    public int getPendingTasks() {
+        return metrics.pendingTasks();
+    }
+
+    @Override
+    public long getTasks() {
+        return metrics.tasks();
+    }
+
+    @Override
+    public long getStalls() {
+        return metrics.stalls();
+    }
+
+    @Override
+    public long getTaskLatencyP50Us() {
+        return metrics.percentileMicros(50);
+    }
+
+    @Override
+    public long getTaskLatencyP99Us() {
+        return metrics.percentileMicros(99);
+    }
+
+    @Override
+    public long getTaskLatencyP999Us() {
+        return metrics.percentileMicros(99.9);
+    }
+
+    @Override
+    public long getMaxTaskLatencyUs() {
+        return TimeUnit.NANOSECONDS.toMicros(metrics.maxNanos());
+    }
+
+    @Override
+    public long[] getTaskLatencyHistogram() {
+        return metrics.histogram();
+    }
+}
@@ -0,0 +1,33 @@
+package io.cantor.service.metrics;
+
+public interface LoopMetricsMXBean {
+
+    /**
+     * @return the tasks waiting in the queue of the loop
+     */
+    int getPendingTasks();
+
+    /**
+     * @return the tasks which ran on the loop
+     */
+    long getTasks();
+
+    /**
+     * @return the tasks which blocked the loop for longer than the watch duration
+     */
+    long getStalls();
+
+    long getTaskLatencyP50Us();
+
+    long getTaskLatencyP99Us();
+
+    long getTaskLatencyP999Us();
+
+    long getMaxTaskLatencyUs();
+
+    /**
+     * @return the tasks of every bucket, where bucket {@code i} holds the ones which ran for
+     * less than {@code 2^i} microseconds, and the last one holds the rest
+     */
+    long[] getTaskLatencyHistogram();
+}
@@ -0,0 +1,49 @@
+package io.cantor.service.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class Metrics {
+
+    private static final String DOMAIN = "io.cantor";
+    private static final String NAME_FMT = "%s:type=%s";
+    private static final String NAMED_FMT = "%s:type=%s,name=%s";
+
+    /**
+     * Registers the bean in the platform MBean server as {@code io.cantor:type=<type>}, so that
+     * it can be collected by jmxtrans. A bean registered under the same type before is replaced.
+     */
+    public static <T> T register(String type, T bean) {
+        return registerAs(String.format(NAME_FMT, DOMAIN, type), bean);
+    }
+
+    /**
+     * Registers one of the beans of a type as {@code io.cantor:type=<type>,name=<name>}.
+     */
+    public static <T> T register(String type, String name, T bean) {
+        return registerAs(String.format(NAMED_FMT, DOMAIN, type, name), bean);
+    }
+
+    private static <T> T registerAs(String objectName, T bean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(bean, name);
+        } catch (Exception e) {
+            if (log.isWarnEnabled())
+                log.warn("register metrics {} failed", objectName, e);
+        }
+
+        return bean;
+    }
+}
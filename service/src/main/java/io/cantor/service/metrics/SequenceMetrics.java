@@ -0,0 +1,129 @@
+package io.cantor.service.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SequenceMetrics implements SequenceMetricsMXBean {
+
+    private static final String TYPE = "Sequence";
+    private static final int CATEGORIES = 256;
+
+    private final LongAdder prefetchHits = new LongAdder();
+    private final LongAdder prefetchMisses = new LongAdder();
+    private final LongAdder prefetchLoads = new LongAdder();
+    private final LongAdder blockingLoads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder loadTimeouts = new LongAdder();
+    private final LongAdder preLeases = new LongAdder();
+    private final LongAdder leasedSequences = new LongAdder();
+    private final LongAdder servedSequences = new LongAdder();
+    private final AtomicLongArray leaseSizes = new AtomicLongArray(CATEGORIES);
+
+    public static SequenceMetrics create() {
+        return Metrics.register(TYPE, new SequenceMetrics());
+    }
+
+    public void prefetchHit() {
+        prefetchHits.increment();
+    }
+
+    public void prefetchMiss() {
+        prefetchMisses.increment();
+    }
+
+    public void prefetchLoad() {
+        prefetchLoads.increment();
+    }
+
+    public void blockingLoad() {
+        blockingLoads.increment();
+    }
+
+    public void coalescedLoad() {
+        coalescedLoads.increment();
+    }
+
+    public void loadTimeout() {
+        loadTimeouts.increment();
+    }
+
+    public void preLease() {
+        preLeases.increment();
+    }
+
+    public void leased(int category, long size) {
+        leasedSequences.add(size);
+        leaseSizes.set(category, size);
+    }
+
+    public void served(long count) {
+        servedSequences.add(count);
+    }
+
+    @Override
+    public long getPrefetchHits() {
+        return prefetchHits.sum();
+    }
+
+    @Override
+    public long getPrefetchMisses() {
+        return prefetchMisses.sum();
+    }
+
+    @Override
+    public long getPrefetchLoads() {
+        return prefetchLoads.sum();
+    }
+
+    @Override
+    public long getBlockingLoads() {
+        return blockingLoads.sum();
+    }
+
+    @Override
+    public long getCoalescedLoads() {
+        return coalescedLoads.sum();
+    }
+
+    @Override
+    public long getLoadTimeouts() {
+        return loadTimeouts.sum();
+    }
+
+    @Override
+    public long getPreLeases() {
+        return preLeases.sum();
+    }
+
+    @Override
+    public long getLeasedSequences() {
+        return leasedSequences.sum();
+    }
+
+    @Override
+    public long getServedSequences() {
+        return servedSequences.sum();
+    }
+
+    @Override
+    public double getUtilization() {
+        long leased = leasedSequences.sum();
+        return 0 == leased ? 0 : (double) servedSequences.sum() / leased;
+    }
+
+    @Override
+    public long getMaxLeaseSize() {
+        long max = 0;
+        for (int i = 0; i < CATEGORIES; i++)
+            max = Math.max(max, leaseSizes.get(i));
+        return max;
+    }
+
+    @Override
+    public long[] getLeaseSizes() {
+        long[] sizes = new long[CATEGORIES];
+        for (int i = 0; i < CATEGORIES; i++)
+            sizes[i] = leaseSizes.get(i);
+        return sizes;
+    }
+}
@@ -0,0 +1,64 @@
+package io.cantor.service.metrics;
+
+public interface SequenceMetricsMXBean {
+
+    /**
+     * @return times a segment ran out and the prefetched one was ready to switch to
+     */
+    long getPrefetchHits();
+
+    /**
+     * @return times a segment ran out before the prefetched one was ready
+     */
+    long getPrefetchMisses();
+
+    /**
+     * @return segments leased from storage in the background
+     */
+    long getPrefetchLoads();
+
+    /**
+     * @return segments leased from storage on the request path
+     */
+    long getBlockingLoads();
+
+    /**
+     * @return loads which waited for the concurrent one of the same key instead of leasing
+     */
+    long getCoalescedLoads();
+
+    /**
+     * @return loads which were not finished within the load timeout
+     */
+    long getLoadTimeouts();
+
+    /**
+     * @return segments leased for the next second before it came
+     */
+    long getPreLeases();
+
+    /**
+     * @return sequences leased from storage
+     */
+    long getLeasedSequences();
+
+    /**
+     * @return sequences served from the leases, counted once the second of a category has passed
+     */
+    long getServedSequences();
+
+    /**
+     * @return served sequences over the leased ones
+     */
+    double getUtilization();
+
+    /**
+     * @return the largest of the latest lease sizes of the categories
+     */
+    long getMaxLeaseSize();
+
+    /**
+     * @return the latest lease size of every category, indexed by the category
+     */
+    long[] getLeaseSizes();
+}
@@ -1,41 +1,36 @@
 package io.cantor.service.rest;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 
+import com.typesafe.config.Config;
+
 import org.apache.commons.math3.util.Pair;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 import io.cantor.http.AffinityScheduler;
-import io.cantor.http.AppRequestResponseHandler;
 import io.cantor.http.HandlerRequest;
 import io.cantor.http.HandlerResponse;
+import io.cantor.http.HttpHeaders;
+import io.cantor.http.NonBlockingHandler;
 import io.cantor.service.Utils;
 import io.cantor.service.clients.LocalIdGenerator;
 import io.cantor.service.clients.Parser;
+import io.cantor.service.clients.SequenceCache;
 import io.cantor.service.clients.TimeWatcher;
 import io.cantor.service.clients.storage.Storage;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Generates ids without blocking: a sequence is taken from the cache, or the response is resumed
+ * from the asynchronous lease of a segment, so the handler runs on the I/O loop.
+ */
 @Slf4j
 public class IdGenerator implements
-        AppRequestResponseHandler<AffinityScheduler, HandlerRequest, HandlerResponse> {
-
+        NonBlockingHandler<AffinityScheduler, HandlerRequest, HandlerResponse> {
 
-    private static final ExecutionException LOAD_CACHE_EXCEPTION = new ExecutionException(
-            "load cache failed", new Throwable("load cache failed"));
-    private static final ExecutionException LOAD_CACHE_CLIENT_EXCEPTION = new ExecutionException(
-            "load cache failed, client is unavailable",
-            new Throwable("load cache failed, client is unavailable"));
 
     private static final String CATEGORY = "cate";
     private static final String RANGE = "range";
@@ -46,41 +41,67 @@ public class IdGenerator implements
     private static final long MAX_RANGE = 10000L;
     private static final long DEFAULT_CATEGORY = 0L;
     private static final long MAX_CATEGORY = 255L;
-    private static final long CACHE_RANGE = MAX_RANGE * 10;
-
-    private static final long ILLEGAL_SEQ = -1L;
-    private static final long START_SEQ = 1L;
-
-    private static final int SEQ_IDX = 0;
-    private static final int DESC_IDX = 1;
-    private static final int TS_IDX = 2;
-    private static final int RANGE_IDX = 3;
-    private static final long EXPIRE_DURATION = 600L;
+    private static final int MAX_BATCH = 16;
+    private static final String LIST_SEPARATOR = ",";
+    private static final String IDS = "ids";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String BINARY_CONTENT_TYPE = "application/x-cantor-binary";
+
+    // pre-encoded, so that the response of an id is written without strings
+    private static final CharSequence SERVER = HttpHeaders.constant("server");
+    private static final CharSequence CONTENT_TYPE = HttpHeaders.constant(HttpHeaders.CONTENT_TYPE);
+    private static final CharSequence JSON_TYPE = HttpHeaders.constant(JSON_CONTENT_TYPE);
+    private static final CharSequence BINARY_TYPE = HttpHeaders.constant(BINARY_CONTENT_TYPE);
+    private static final CharSequence JSON_START = HttpHeaders.constant("{\"" + START + "\":\"");
+    private static final CharSequence JSON_RANGE = HttpHeaders.constant("\",\"" + RANGE + "\": ");
+    private static final CharSequence JSON_END = HttpHeaders.constant("}");
+    /**
+     * Renders the whole id in the binary format, which is chosen by the accept header rather
+     * than the mode parameter.
+     */
+    private static final int BINARY_MODE = -1;
 
     private final List<Storage> storages;
     private final TimeWatcher timeWatcher;
+    private final CharSequence serverId;
     private LocalIdGenerator localIdGenerator;
-    private Cache<String, CacheSequence> sequenceCache;
-    private Cache<String, AtomicBoolean> sequenceLocks;
+    private SequenceCache sequenceCache;
 
-    public IdGenerator(List<Storage> storages, TimeWatcher timeWatcher) {
+    public IdGenerator(Config config, List<Storage> storages, TimeWatcher timeWatcher) {
         localIdGenerator = new LocalIdGenerator();
         this.timeWatcher = timeWatcher;
+        this.serverId = HttpHeaders.constant(timeWatcher.localId());
         this.storages = storages;
+        sequenceCache = new SequenceCache(config);
+        timeWatcher.addTickListener(new TimeWatcher.TickListener() {
+            @Override
+            public void beforeTick(long current, long next) {
+                sequenceCache.preLease(current - Parser.START_EPOCH, next - Parser.START_EPOCH);
+            }
+
+            @Override
+            public void onTick(long current) {
+                sequenceCache.tick(current - Parser.START_EPOCH);
+            }
+        });
+    }
 
-        sequenceLocks = CacheBuilder.newBuilder().build();
-        sequenceCache = CacheBuilder.<String, CacheSequence>newBuilder().expireAfterWrite(
-                EXPIRE_DURATION, TimeUnit.SECONDS).removalListener(notification -> {
-            String key = (String) notification.getKey();
-            if (null != key)
-                sequenceLocks.invalidate(key);
-        }).build();
+    public void close() {
+        sequenceCache.close();
     }
 
+    /**
+     * Generates the ids of a category. The response is JSON, unless the request accepts
+     * {@value BINARY_CONTENT_TYPE}, in which case the body is 16 bytes in little-endian: the
+     * start id in 8 bytes, then the range and the descriptor in 4 bytes each.
+     */
     @Override
     public void handle(AffinityScheduler scheduler, HandlerRequest req, HandlerResponse resp) {
-        resp.header("server", timeWatcher.localId());
-        resp.header("Content-Type", "application/json");
+        resp.header(SERVER, serverId);
+        String accept = req.headers().get(HttpHeaders.ACCEPT);
+        boolean binary = null != accept && accept.contains(BINARY_CONTENT_TYPE);
+        // the binary type is only set on the 16 bytes of an id, errors are not binary
+        resp.header(CONTENT_TYPE, JSON_TYPE);
         Map<String, String> queries = req.queries();
         long category;
         if (!queries.containsKey(CATEGORY) || queries.get(CATEGORY).isEmpty())
@@ -93,162 +114,243 @@ public class IdGenerator implements
             return;
         }
 
+        int mode = mode(queries);
+        if (mode != Parser.WHOLE_ID && mode != Parser.RADIX) {
+            resp.badRequest(String.format("Illegal mode: %s", mode).getBytes());
+            return;
+        }
+        long range = range(queries.get(RANGE), mode);
+
+        generate(resp, category, range, binary ? BINARY_MODE : mode);
+    }
+
+    /**
+     * Generates the ids of many categories in one response. The categories and their ranges are
+     * given as comma separated lists of the same order in {@code cate} and {@code range}, where
+     * a missing range is the default one.
+     */
+    public void handleBatch(AffinityScheduler scheduler, HandlerRequest req,
+                            HandlerResponse resp) {
+        resp.header(SERVER, serverId);
+        resp.header(CONTENT_TYPE, JSON_TYPE);
+        Map<String, String> queries = req.queries();
+        if (!queries.containsKey(CATEGORY) || queries.get(CATEGORY).isEmpty()) {
+            resp.badRequest("Categories are required".getBytes());
+            return;
+        }
+        String[] categoryValues = queries.get(CATEGORY).split(LIST_SEPARATOR);
+        if (categoryValues.length > MAX_BATCH) {
+            resp.badRequest(String.format("Too many categories: %s, max count is %s",
+                    categoryValues.length, MAX_BATCH).getBytes());
+            return;
+        }
+        int mode = mode(queries);
+        if (mode != Parser.WHOLE_ID && mode != Parser.RADIX) {
+            resp.badRequest(String.format("Illegal mode: %s", mode).getBytes());
+            return;
+        }
+
+        String[] rangeValues = !queries.containsKey(RANGE) || queries.get(RANGE).isEmpty()
+                ? new String[0] : queries.get(RANGE).split(LIST_SEPARATOR);
+        long[] categories = new long[categoryValues.length];
+        long[] ranges = new long[categoryValues.length];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = Long.valueOf(categoryValues[i].trim());
+            if (categories[i] > MAX_CATEGORY) {
+                resp.badRequest(String.format("Illegal category: %s, max value is 255",
+                        categories[i]).getBytes());
+                return;
+            }
+            ranges[i] = range(i < rangeValues.length ? rangeValues[i].trim() : null, mode);
+        }
+
+        generate(resp, categories, ranges, mode);
+    }
+
+    private static int mode(Map<String, String> queries) {
+        if (!queries.containsKey(MODE) || queries.get(MODE).isEmpty())
+            return Parser.WHOLE_ID;
+        return Integer.valueOf(queries.get(MODE));
+    }
+
+    private static long range(String value, int mode) {
         long range;
-        if (!queries.containsKey(RANGE) || queries.get(RANGE).isEmpty()) {
+        if (null == value || value.isEmpty()) {
             range = DEFAULT_RANGE;
         } else {
-            range = Long.valueOf(String.valueOf(queries.get(RANGE)));
+            range = Long.valueOf(value);
             range = range <= 0 ? DEFAULT_RANGE : range;
         }
         range = MAX_RANGE < range ? MAX_RANGE : range;
-
-        int mode;
-        if (!queries.containsKey(MODE) || queries.get(MODE).isEmpty())
-            mode = Parser.WHOLE_ID;
-        else
-            mode = Integer.valueOf(queries.get(MODE));
         if (mode == Parser.RADIX)
             range = range >= 10 ? 10 : range;
+        return range;
+    }
 
-        // generate ids
+    private void generate(HandlerResponse resp, long category, long range, int mode) {
         long ts = timeWatcher.currentAvailableTimestamp() - Parser.START_EPOCH;
         long instanceId = timeWatcher.instanceId();
-        Optional<Long[]> opt = getSequence(category, ts, range, instanceId);
-        if (!opt.isPresent()) {
-            resp.internalServerError("Can not get an id".getBytes());
+        Storage storage = availableStorage();
+        if (null == storage) {
+            respondFromLocal(resp, category, range, mode, instanceId);
             return;
         }
-        Long[] val = opt.get();
-        long seq = val[SEQ_IDX];
-        if (!Parser.validSequence(seq)) {
-            resp.forbidden("Sequence at current timestamp is full".getBytes());
+
+        long seq = sequenceCache.tryNext(category, ts, range, instanceId);
+        if (SequenceCache.ILLEGAL_SEQ != seq) {
+            respond(resp, category, storage.descriptor(), ts, seq, range, mode, instanceId);
             return;
         }
-        long desc = val[DESC_IDX];
-        if (LocalIdGenerator.LOCAL_CATE == desc)
-            ts = val[TS_IDX];
-        range = val[RANGE_IDX];
-
-        // combine values
-        Map<String, Object> respResult;
-        Parser.Serializer serializer;
-        switch (mode) {
-            case Parser.WHOLE_ID:
-                serializer = Parser.serialize(category, desc, ts, seq, instanceId);
-                respResult = ImmutableMap.of(START, String.valueOf(serializer.id()), RANGE, range);
-                break;
-            case Parser.RADIX:
-                serializer = Parser.serialize(category, desc, ts, seq, instanceId);
-                respResult = ImmutableMap.of(START, serializer.toString(Parser.RADIX_36), RANGE,
-                        range);
-                break;
-            default:
-                resp.badRequest(String.format("Illegal mode: %s", mode).getBytes());
-                return;
-        }
 
-        resp.ok(Utils.convertToString(respResult).getBytes());
+        // the loop is not held while the segment is leased from the storage, the response is
+        // written on the thread completing the lease, as it never blocks and is handed over to
+        // the I/O loop to be flushed, rather than queueing every waiting request on a loop
+        long descriptor = storage.descriptor();
+        sequenceCache.load(category, ts, range, storage, instanceId)
+                     .thenAccept(loaded -> {
+                         if (SequenceCache.ILLEGAL_SEQ == loaded)
+                             respondFromLocal(resp, category, range, mode, instanceId);
+                         else
+                             respond(resp, category, descriptor, ts, loaded, range, mode,
+                                     instanceId);
+                     })
+                     .exceptionally(e -> {
+                         if (log.isErrorEnabled())
+                             log.error("respond the loaded sequence failed", e);
+                         resp.internalServerError();
+                         return null;
+                     });
     }
 
-    private Optional<Long[]> getSequence(long category, long ts, long range, long instanceId) {
-        long seq = ILLEGAL_SEQ;
-        long descriptor = 0L;
-        long actualTs = ts;
-        Optional<Long> opt;
-        Storage storage = null;
-        for (Storage currentStorage : storages) {
-            if (!currentStorage.available())
-                continue;
-            storage = currentStorage;
-            descriptor = storage.descriptor();
-            break;
+    private void generate(HandlerResponse resp, long[] categories, long[] ranges, int mode) {
+        long ts = timeWatcher.currentAvailableTimestamp() - Parser.START_EPOCH;
+        long instanceId = timeWatcher.instanceId();
+        Storage storage = availableStorage();
+        long descriptor = null == storage ? LocalIdGenerator.LOCAL_CATE : storage.descriptor();
+        long[] seqs = new long[categories.length];
+        int missed = 0;
+        for (int i = 0; i < categories.length; i++) {
+            seqs[i] = null == storage ? SequenceCache.ILLEGAL_SEQ : sequenceCache.tryNext(
+                    categories[i], ts, ranges[i], instanceId);
+            if (SequenceCache.ILLEGAL_SEQ == seqs[i])
+                missed++;
         }
-
-        if (null != storage) {
-            opt = getFromCache(category, actualTs, range, storage, instanceId);
-            if (opt.isPresent())
-                seq = opt.get();
+        if (null == storage || 0 == missed) {
+            respond(resp, categories, descriptor, ts, seqs, ranges, mode, instanceId);
+            return;
         }
 
-        if (ILLEGAL_SEQ == seq) {
-            // from local
-            descriptor = LocalIdGenerator.LOCAL_CATE;
-            Pair<Long, Long> seqParts = localIdGenerator.getFromLocal(category, range, instanceId);
-            actualTs = seqParts.getFirst();
-            seq = seqParts.getSecond();
+        // the missed categories are leased together, and responded like a single one
+        long[] missedCategories = new long[missed];
+        long[] missedRanges = new long[missed];
+        for (int i = 0, j = 0; i < categories.length; i++) {
+            if (SequenceCache.ILLEGAL_SEQ == seqs[i]) {
+                missedCategories[j] = categories[i];
+                missedRanges[j++] = ranges[i];
+            }
         }
-
-        return Optional.of(new Long[]{seq, descriptor, actualTs, range});
+        sequenceCache.load(missedCategories, ts, missedRanges, storage, instanceId)
+                     .thenAccept(loaded -> {
+                         for (int i = 0, j = 0; i < categories.length; i++) {
+                             if (SequenceCache.ILLEGAL_SEQ == seqs[i])
+                                 seqs[i] = loaded[j++];
+                         }
+                         respond(resp, categories, descriptor, ts, seqs, ranges, mode,
+                                 instanceId);
+                     })
+                     .exceptionally(e -> {
+                         if (log.isErrorEnabled())
+                             log.error("respond the loaded sequences failed", e);
+                         resp.internalServerError();
+                         return null;
+                     });
     }
 
-    private Optional<Long> getFromCache(long category, long ts, long range, Storage storage, long instanceId) {
-        Long seq;
-        String key = String.format("%s-%s-%s", ts, category, instanceId);
-        CacheSequence cacheSequence = sequenceCache.getIfPresent(key);
-        if (null != cacheSequence) {
-            seq = cacheSequence.next();
-            if (null == seq)
-                sequenceCache.invalidate(key);
-            return Optional.ofNullable(seq);
-        }
-
-        AtomicBoolean lock = null;
-        try {
-            lock = sequenceLocks.get(key, () -> new AtomicBoolean(true));
-        } catch (ExecutionException e) {
-            if (log.isWarnEnabled())
-                log.warn("get lock cache failed for [{}]", key, e);
-        }
-        if (null == lock || !lock.compareAndSet(true, false))
-            return Optional.empty();
-        try {
-            cacheSequence = sequenceCache.get(key, () -> {
-                if (!storage.available())
-                    throw LOAD_CACHE_CLIENT_EXCEPTION;
-                Optional<Long> opt = storage.incrementAndGet(category, ts, CACHE_RANGE);
-                if (!opt.isPresent()) {
-                    if (log.isErrorEnabled())
-                        log.error(
-                                "get and increment in failed for [cate {}] [ts {}] [range {}] in {}",
-                                category, ts, range, storage.getClass().getSimpleName());
-                    throw LOAD_CACHE_EXCEPTION;
-                }
-                long incrementedSeq = opt.get();
-                return new CacheSequence(incrementedSeq - CACHE_RANGE + START_SEQ, incrementedSeq,
-                        range);
-            });
-        } catch (ExecutionException e) {
-            if (log.isWarnEnabled())
-                log.warn("", e);
-        }
-        lock.compareAndSet(false, true);
-
-        if (null == cacheSequence)
-            return Optional.empty();
-        seq = cacheSequence.next();
-        if (null == seq)
-            sequenceCache.invalidate(key);
-
-        return Optional.ofNullable(seq);
+    private Storage availableStorage() {
+        for (Storage storage : storages) {
+            if (storage.available())
+                return storage;
+        }
+        return null;
     }
 
-    static class CacheSequence {
-
-        @Getter
-        private AtomicLong seq;
+    private void respondFromLocal(HandlerResponse resp, long category, long range, int mode,
+                                  long instanceId) {
+        Pair<Long, Long> seqParts = localIdGenerator.getFromLocal(category, range, instanceId);
+        respond(resp, category, LocalIdGenerator.LOCAL_CATE, seqParts.getFirst(),
+                seqParts.getSecond(), range, mode, instanceId);
+    }
 
-        private final long seqLimit;
-        private final long step;
+    private void respond(HandlerResponse resp, long category, long desc, long ts, long seq,
+                         long range, int mode, long instanceId) {
+        if (!Parser.validSequence(seq)) {
+            resp.forbidden("Sequence at current timestamp is full".getBytes());
+            return;
+        }
 
-        CacheSequence(long seq, long seqLimit, long step) {
-            this.seq = new AtomicLong(seq);
-            this.seqLimit = seqLimit;
-            this.step = step;
+        if (BINARY_MODE == mode) {
+            resp.header(CONTENT_TYPE, BINARY_TYPE)
+                .writeLongLE(Parser.serialize(category, desc, ts, seq, instanceId).id())
+                .writeIntLE((int) range)
+                .writeIntLE((int) desc)
+                .complete();
+        } else if (Parser.WHOLE_ID == mode) {
+            resp.writeAscii(JSON_START)
+                .writeDecimal(Parser.serialize(category, desc, ts, seq, instanceId).id())
+                .writeAscii(JSON_RANGE)
+                .writeDecimal(range)
+                .writeAscii(JSON_END)
+                .complete();
+        } else {
+            resp.ok(Utils.convertToString(result(category, desc, ts, seq, range, mode,
+                    instanceId)).getBytes());
         }
+    }
 
-        Long next() {
-            Long next = seq.getAndAdd(step);
-            return next < seqLimit ? next : null;
+    /**
+     * @param seqs the sequences of the categories, the illegal ones of which are generated
+     *             locally
+     */
+    private void respond(HandlerResponse resp, long[] categories, long desc, long ts,
+                         long[] seqs, long[] ranges, int mode, long instanceId) {
+        List<Map<String, Object>> results = new ArrayList<>(categories.length);
+        for (int i = 0; i < categories.length; i++) {
+            Map<String, Object> result;
+            if (SequenceCache.ILLEGAL_SEQ == seqs[i]) {
+                Pair<Long, Long> seqParts = localIdGenerator.getFromLocal(categories[i],
+                        ranges[i], instanceId);
+                result = result(categories[i], LocalIdGenerator.LOCAL_CATE, seqParts.getFirst(),
+                        seqParts.getSecond(), ranges[i], mode, instanceId);
+            } else {
+                result = result(categories[i], desc, ts, seqs[i], ranges[i], mode, instanceId);
+            }
+            if (null != result)
+                result = ImmutableMap.<String, Object>builder().put(CATEGORY, categories[i])
+                                                               .putAll(result)
+                                                               .build();
+            if (null == result) {
+                resp.forbidden(String.format("Sequence of category %s at current timestamp is full",
+                        categories[i]).getBytes());
+                return;
+            }
+            results.add(result);
         }
+
+        resp.ok(Utils.convertToString(ImmutableMap.of(IDS, results)).getBytes());
+    }
+
+    /**
+     * @return the id and range of the category, or null if the sequence is out of the schema
+     */
+    private Map<String, Object> result(long category, long desc, long ts, long seq, long range,
+                                       int mode, long instanceId) {
+        if (!Parser.validSequence(seq))
+            return null;
+
+        Parser.Serializer serializer = Parser.serialize(category, desc, ts, seq, instanceId);
+        if (mode == Parser.RADIX)
+            return ImmutableMap.of(START, serializer.toString(Parser.RADIX_36), RANGE, range);
+        else
+            return ImmutableMap.of(START, String.valueOf(serializer.id()), RANGE, range);
     }
 }
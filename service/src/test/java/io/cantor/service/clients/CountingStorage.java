@@ -0,0 +1,85 @@
+package io.cantor.service.clients;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cantor.service.clients.storage.Storage;
+
+/**
+ * An in-memory {@link Storage} which leases from one counter and counts the leases.
+ */
+class CountingStorage implements Storage {
+    final AtomicLong counter = new AtomicLong();
+    final AtomicInteger leases = new AtomicInteger();
+
+    @Override
+    public Optional<Long> incrementAndGet(long category, long ts, long range) {
+        leases.incrementAndGet();
+        return Optional.of(counter.addAndGet(range));
+    }
+
+    @Override
+    public CompletionStage<Long> incrementAndGetAsync(long category, long ts, long range) {
+        return CompletableFuture.supplyAsync(() -> incrementAndGet(category, ts, range).get());
+    }
+
+    @Override
+    public CompletionStage<long[]> incrementAndGetAsync(long[] categories, long ts,
+                                                        long[] ranges) {
+        return CompletableFuture.supplyAsync(() -> {
+            leases.incrementAndGet();
+            long[] afters = new long[categories.length];
+            for (int i = 0; i < categories.length; i++)
+                afters[i] = counter.addAndGet(ranges[i]);
+            return afters;
+        });
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean available() {
+        return true;
+    }
+
+    @Override
+    public long syncTime(long localTime) {
+        return localTime;
+    }
+
+    @Override
+    public List<Long> timeMeta() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void deregister() {
+    }
+
+    @Override
+    public String type() {
+        return "Counting";
+    }
+
+    @Override
+    public long descriptor() {
+        return 0;
+    }
+
+    @Override
+    public int checkAndRegister(int maxInstances) {
+        return 0;
+    }
+
+    @Override
+    public boolean heartbeat(int instanceNumber, int ttl) {
+        return true;
+    }
+}
@@ -0,0 +1,23 @@
+package io.cantor.service.clients;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LeaseSizerTest {
+
+    @Test
+    public void testSize() {
+        LeaseSizer sizer = new LeaseSizer(1000, 100000, 0.5, 1.0);
+        Assert.assertEquals(1000, sizer.size());
+
+        sizer.roll(400000, 1);
+        Assert.assertEquals(100000, sizer.size());
+
+        sizer.roll(40000, 1);
+        Assert.assertEquals(100000, sizer.size());
+
+        // idle seconds decay the rate down to the lower bound
+        sizer.roll(0, 17);
+        Assert.assertEquals(1000, sizer.size());
+    }
+}
@@ -0,0 +1,77 @@
+package io.cantor.service.clients;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lookup of a segment by the {@code String} key in a Guava {@link Cache}, which is
+ * how the segments were cached before, with the lookup by the packed key in {@link
+ * SegmentTable}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.cantor.service.clients.SegmentTableBenchmark}, or from the IDE. Add
+ * {@code -prof gc} to the options to compare the allocation per lookup as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentTableBenchmark {
+
+    private static final long TS = 30000000L;
+    private static final long INSTANCE = 2L;
+
+    @Param({"8", "128"})
+    private int categories;
+
+    private Cache<String, Object> guava;
+    private SegmentTable<Object> table;
+
+    @Setup
+    public void setup() {
+        guava = CacheBuilder.newBuilder().expireAfterWrite(600L, TimeUnit.SECONDS).build();
+        table = new SegmentTable<>(1024, 1024, 4096, Object::new);
+        for (int category = 0; category < categories; category++) {
+            guava.put(String.format("%s-%s-%s", TS, category, INSTANCE), new Object());
+            table.getOrCreate(SegmentTable.key(TS, category, INSTANCE));
+        }
+    }
+
+    @Benchmark
+    public Object guavaCache() {
+        long category = ThreadLocalRandom.current().nextInt(categories);
+        return guava.getIfPresent(String.format("%s-%s-%s", TS, category, INSTANCE));
+    }
+
+    @Benchmark
+    public Object segmentTable() {
+        long category = ThreadLocalRandom.current().nextInt(categories);
+        return table.get(SegmentTable.key(TS, category, INSTANCE));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(
+                SegmentTableBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
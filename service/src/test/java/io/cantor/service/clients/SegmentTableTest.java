@@ -0,0 +1,39 @@
+package io.cantor.service.clients;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SegmentTableTest {
+
+    @Test
+    public void testFullGeneration() {
+        SegmentTable<Object> table = new SegmentTable<>(2, 2, 8, Object::new);
+        Object first = table.getOrCreate(SegmentTable.key(10, 1, 0));
+        Object second = table.getOrCreate(SegmentTable.key(10, 2, 0));
+        Assert.assertNotSame(first, second);
+
+        // the third category of the second overflows, and is cached there
+        long key = SegmentTable.key(10, 3, 0);
+        Object overflowed = table.getOrCreate(key);
+        Assert.assertNotNull(overflowed);
+        Assert.assertSame(overflowed, table.getOrCreate(key));
+        Assert.assertSame(overflowed, table.get(key));
+        Assert.assertSame(first, table.get(SegmentTable.key(10, 1, 0)));
+    }
+
+    @Test
+    public void testExpiredSecond() {
+        SegmentTable<Object> table = new SegmentTable<>(2, 2, 8, Object::new);
+        long key = SegmentTable.key(10, 1, 0);
+        Object expiring = table.getOrCreate(key);
+        // a later second takes over the generation of the second
+        table.getOrCreate(SegmentTable.key(12, 1, 0));
+        Assert.assertNull(table.get(key));
+
+        Object expired = table.getOrCreate(key);
+        Assert.assertNotNull(expired);
+        Assert.assertNotSame(expiring, expired);
+        Assert.assertSame(expired, table.getOrCreate(key));
+        Assert.assertSame(expired, table.get(key));
+    }
+}
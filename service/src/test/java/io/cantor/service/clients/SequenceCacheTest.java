@@ -0,0 +1,113 @@
+package io.cantor.service.clients;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SequenceCacheTest {
+
+    @Test
+    public void testConcurrentNext() throws Exception {
+        Map<String, Object> props = new HashMap<>();
+        props.put("sequence.prefetch.enabled", true);
+        props.put("sequence.stripes", 4);
+        Config config = ConfigFactory.parseMap(props);
+        CountingStorage storage = new CountingStorage();
+        SequenceCache cache = new SequenceCache(config);
+
+        Set<Long> seqs = ConcurrentHashMap.newKeySet();
+        AtomicInteger missing = new AtomicInteger();
+        AtomicInteger duplicated = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < 2000; j++) {
+                    long seq = cache.next(1, 100, 100, storage, 0);
+                    if (SequenceCache.ILLEGAL_SEQ == seq)
+                        missing.incrementAndGet();
+                    else if (!seqs.add(seq))
+                        duplicated.incrementAndGet();
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        cache.close();
+
+        Assert.assertEquals(0, missing.get());
+        Assert.assertEquals(0, duplicated.get());
+        Assert.assertEquals(16000, seqs.size());
+    }
+
+    @Test
+    public void testPreLease() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("sequence.prelease.enabled", true);
+        Config config = ConfigFactory.parseMap(props);
+        CountingStorage storage = new CountingStorage();
+        SequenceCache cache = new SequenceCache(config);
+
+        Assert.assertNotEquals(SequenceCache.ILLEGAL_SEQ, cache.next(1, 100, 100, storage, 0));
+        cache.preLease(100, 101);
+        Assert.assertNotEquals(SequenceCache.ILLEGAL_SEQ, cache.next(1, 101, 100, storage, 0));
+        cache.close();
+
+        // the next second is served by the pre-leased segment
+        Assert.assertEquals(2, storage.leases.get());
+    }
+
+    @Test
+    public void testTick() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("sequence.prelease.enabled", true);
+        props.put("sequence.stripes", 1);
+        props.put("sequence.lease.min", 1000);
+        props.put("sequence.lease.alpha", 1.0);
+        props.put("sequence.lease.headroom", 1.0);
+        Config config = ConfigFactory.parseMap(props);
+        CountingStorage storage = new CountingStorage();
+        SequenceCache cache = new SequenceCache(config);
+
+        cache.tick(100);
+        for (int i = 0; i < 50; i++)
+            Assert.assertNotEquals(SequenceCache.ILLEGAL_SEQ, cache.next(1, 100, 100, storage, 0));
+        Assert.assertEquals(5000, storage.counter.get());
+
+        // the pre-lease ahead of the tick is sized by the rate of the windows closed so far
+        cache.preLease(100, 101);
+        Assert.assertNotEquals(SequenceCache.ILLEGAL_SEQ, cache.next(1, 101, 100, storage, 0));
+        Assert.assertEquals(6000, storage.counter.get());
+
+        // the tick closes the window of the second 100 by what its segments handed out
+        cache.tick(101);
+        Assert.assertNotEquals(SequenceCache.ILLEGAL_SEQ, cache.next(1, 102, 100, storage, 0));
+        cache.close();
+        Assert.assertEquals(11000, storage.counter.get());
+    }
+
+    @Test
+    public void testBatchLoad() {
+        Config config = ConfigFactory.parseMap(new HashMap<>());
+        CountingStorage storage = new CountingStorage();
+        SequenceCache cache = new SequenceCache(config);
+
+        long[] seqs = cache.load(new long[]{1, 2, 3, 2}, 100, new long[]{10, 10, 10, 10}, storage,
+                0).join();
+        cache.close();
+
+        // one lease for the three distinct categories
+        Assert.assertEquals(1, storage.leases.get());
+        Assert.assertEquals(4, Arrays.stream(seqs).distinct().count());
+        Assert.assertTrue(Arrays.stream(seqs).noneMatch(seq -> SequenceCache.ILLEGAL_SEQ == seq));
+    }
+}
@@ -0,0 +1,87 @@
+package io.cantor.service.clients;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of one hot key from 1 up to N threads, with the segment handed out
+ * through one shared counter ({@code stripes = 1}) and through per-thread stripes, of ranges of
+ * 1 and of the default range of 1000, which is taken from the shared counter once every
+ * {@code sequence.stripe.ranges} requests.
+ * <p>
+ * Run the main method, the thread counts are doubled from 1 up to the number of processors, or
+ * pass the highest thread count as the first argument.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceContentionBenchmark {
+
+    private static final long CATEGORY = 1L;
+    private static final long TS = 100L;
+
+    @Param({"1", "16"})
+    private int stripes;
+
+    @Param({"1", "1000"})
+    private long range;
+
+    private CountingStorage storage;
+    private SequenceCache cache;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("sequence.stripes", stripes);
+        props.put("sequence.lease.min", 20000000);
+        props.put("sequence.lease.max", 20000000);
+        Config config = ConfigFactory.parseMap(props);
+        storage = new CountingStorage();
+        cache = new SequenceCache(config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Benchmark
+    public long next() {
+        return cache.next(CATEGORY, TS, range, storage, 0L);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime()
+                                                                       .availableProcessors();
+        for (int threads = 1; threads <= max; threads <<= 1) {
+            Options options = new OptionsBuilder().include(
+                    SequenceContentionBenchmark.class.getSimpleName())
+                                                  .threads(threads)
+                                                  .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.cantor.service.clients.storage;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the asynchronous leases of 8 threads, as the compute loops call them, against a
+ * {@link HBaseTableStandIn} with a round trip of 1ms, with every call incremented on its own
+ * ({@code batchWindow} 0) and through the shared batches of {@link LeaseBatcher}: of a single
+ * category, and of 8 categories leased together.
+ * <p>
+ * The threads are the leases in flight, which the non-blocking handlers let grow beyond the
+ * loops, e.g. {@code -t 64}; with as many callers as threads of the storage a batch only waits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class HBaseStorageBenchmark {
+
+    private static final long CATEGORY = 1L;
+    private static final long TS = 100L;
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long[] CATEGORIES = {1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L};
+    private static final long[] RANGES = {1L, 1L, 1L, 1L, 1L, 1L, 1L, 1L};
+
+    @Param({"0", "500"})
+    private long batchWindow;
+
+    private HBaseStorage storage;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("hbase.batch.window.us", batchWindow);
+        Config config = ConfigFactory.parseMap(props);
+        HBaseTableStandIn standIn = new HBaseTableStandIn(ROUND_TRIP_NANOS);
+        storage = new HBaseStorage(config, "benchmark",
+                standIn.tables(RowLayout.LEGACY_TABLE_COUNT));
+    }
+
+    @TearDown
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Benchmark
+    public long leaseCategory() {
+        return storage.incrementAndGetAsync(CATEGORY, TS, 1L).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public long[] leaseCategories() {
+        return storage.incrementAndGetAsync(CATEGORIES, TS, RANGES).toCompletableFuture().join();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(
+                HBaseStorageBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,101 @@
+package io.cantor.service.clients.storage;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-memory stand-in of the HBase tables {@link HBaseStorage} leases from, which serves the
+ * increments, one at a time or in a batch, from counters per row and column. Every call is
+ * delayed by the given latency, as a round trip to a region server would be, whatever the number
+ * of rows it carries.
+ */
+class HBaseTableStandIn {
+
+    private final long latencyNanos;
+    private final Map<String, Long> counters = new ConcurrentHashMap<>();
+
+    HBaseTableStandIn(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * @return the tables of the names {@link HBaseStorage} opens, all served by this stand-in
+     */
+    ConcurrentHashMap<String, Table> tables(int count) {
+        ConcurrentHashMap<String, Table> tables = new ConcurrentHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = String.format(HBaseStorage.TABLE_FMT, i);
+            tables.put(name, table(name));
+        }
+        return tables;
+    }
+
+    private Table table(String name) {
+        return (Table) Proxy.newProxyInstance(Table.class.getClassLoader(),
+                new Class<?>[]{Table.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "increment":
+                            roundTrip();
+                            return increment(name, (Increment) args[0]);
+                        case "batch":
+                            roundTrip();
+                            batch(name, (List<?>) args[0], (Object[]) args[1]);
+                            return null;
+                        case "close":
+                        case "setOperationTimeout":
+                            return null;
+                        case "toString":
+                            return name;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private void batch(String table, List<?> rows, Object[] results) {
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = (Row) rows.get(i);
+            results[i] = increment(table, (Increment) row);
+        }
+    }
+
+    private Result increment(String table, Increment increment) {
+        List<Cell> cells = new ArrayList<>();
+        for (List<Cell> family : increment.getFamilyCellMap().values()) {
+            for (Cell cell : family) {
+                byte[] qualifier = CellUtil.cloneQualifier(cell);
+                String key = table + "/" + Bytes.toString(increment.getRow()) + "/"
+                        + Bytes.toString(qualifier);
+                long after = counters.merge(key, Bytes.toLong(CellUtil.cloneValue(cell)),
+                        Long::sum);
+                cells.add(new KeyValue(increment.getRow(), CellUtil.cloneFamily(cell), qualifier,
+                        Bytes.toBytes(after)));
+            }
+        }
+        cells.sort(KeyValue.COMPARATOR);
+        return Result.create(cells);
+    }
+
+    private void roundTrip() {
+        long deadline = System.nanoTime() + latencyNanos;
+        for (long left = latencyNanos; left > 0; left = deadline - System.nanoTime())
+            LockSupport.parkNanos(left);
+    }
+}
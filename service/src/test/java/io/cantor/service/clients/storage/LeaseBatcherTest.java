@@ -0,0 +1,53 @@
+package io.cantor.service.clients.storage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class LeaseBatcherTest {
+
+    @Test
+    public void testBatches() {
+        List<Integer> sizes = new CopyOnWriteArrayList<>();
+        LeaseBatcher batcher = new LeaseBatcher(TimeUnit.SECONDS.toNanos(1), 4, 16, batch -> {
+            sizes.add(batch.size());
+            for (LeaseBatcher.Lease lease : batch)
+                lease.future.complete(lease.category * lease.range);
+        }, Runnable::run);
+
+        List<CompletableFuture<Long>> leases = new ArrayList<>();
+        for (long i = 0; i < 8; i++)
+            leases.add(batcher.lease(i, 100L, 10L).toCompletableFuture());
+        // full batches are flushed without waiting for the window
+        for (int i = 0; i < 8; i++)
+            Assert.assertEquals(i * 10L, (long) leases.get(i).join());
+        Assert.assertEquals(8, sizes.stream().mapToInt(Integer::intValue).sum());
+        Assert.assertTrue(sizes.stream().allMatch(size -> size <= 4));
+
+        batcher.close();
+        Assert.assertTrue(batcher.lease(1L, 100L, 10L).toCompletableFuture()
+                                 .isCompletedExceptionally());
+    }
+
+    @Test
+    public void testDroppedFlushes() {
+        List<Runnable> queued = new CopyOnWriteArrayList<>();
+        LeaseBatcher batcher = new LeaseBatcher(TimeUnit.SECONDS.toNanos(1), 2, 16,
+                batch -> Assert.fail("a dropped flush should not run"), queued::add);
+
+        CompletableFuture<Long> lease = batcher.lease(1L, 100L, 10L).toCompletableFuture();
+        batcher.lease(2L, 100L, 10L);
+        while (queued.isEmpty())
+            Thread.yield();
+        batcher.close();
+
+        // the executor is shut down before it runs the flush
+        batcher.dropped(queued);
+        Assert.assertTrue(lease.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,231 @@
+package io.cantor.service.clients.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-memory stand-in of {@code redis-server}, speaking RESP on a local port with a thread per
+ * connection, for the commands {@link RedisStorage} sends. Every round trip is delayed by the
+ * given latency before the replies are flushed, as the network to a real server would.
+ * <p>
+ * It runs no Lua, a script loaded by {@code SCRIPT LOAD} is taken as the lease script of {@link
+ * RedisStorage}, which {@code EVALSHA} runs natively.
+ */
+class RedisStandIn implements Closeable {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final ServerSocket server;
+    private final long latencyNanos;
+    private final Map<String, Map<String, String>> hashes = new ConcurrentHashMap<>();
+    private final Map<String, Long> counters = new ConcurrentHashMap<>();
+    private final Set<String> scripts = ConcurrentHashMap.newKeySet();
+
+    RedisStandIn(long latencyNanos) throws IOException {
+        this.latencyNanos = latencyNanos;
+        server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "redis-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread connection = new Thread(() -> serve(socket), "redis-stand-in-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            for (List<String> command = read(in); null != command; command = read(in)) {
+                execute(command, out);
+                // the replies of a pipeline go back in one round trip
+                if (0 == in.available()) {
+                    LockSupport.parkNanos(latencyNanos);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // the client is gone
+        }
+    }
+
+    private void execute(List<String> command, OutputStream out) throws IOException {
+        switch (command.get(0).toUpperCase()) {
+            case "PING":
+                simple(out, "PONG");
+                break;
+            case "HINCRBY":
+                integer(out, hincrBy(command.get(1), command.get(2), command.get(3)));
+                break;
+            case "SCRIPT":
+                String sha = sha1(command.get(2));
+                scripts.add(sha);
+                bulk(out, sha);
+                break;
+            case "EVALSHA":
+                if (!scripts.contains(command.get(1))) {
+                    out.write("-NOSCRIPT No matching script".getBytes(StandardCharsets.US_ASCII));
+                    out.write(CRLF);
+                    break;
+                }
+                // KEYS[1], the ttl, then the pairs of field and range
+                String key = command.get(3);
+                List<Long> afters = new ArrayList<>();
+                for (int i = 5; i + 1 < command.size(); i += 2)
+                    afters.add(hincrBy(key, command.get(i), command.get(i + 1)));
+                out.write(('*' + String.valueOf(afters.size())).getBytes(
+                        StandardCharsets.US_ASCII));
+                out.write(CRLF);
+                for (long after : afters)
+                    integer(out, after);
+                break;
+            case "INCR":
+                integer(out, counters.merge(command.get(1), 1L, Long::sum));
+                break;
+            case "EXPIRE":
+                integer(out, 1L);
+                break;
+            case "HGET":
+                bulk(out, hash(command.get(1)).get(command.get(2)));
+                break;
+            case "HSET":
+                integer(out, null == hash(command.get(1)).put(command.get(2), command.get(3))
+                             ? 1L : 0L);
+                break;
+            case "HDEL":
+                integer(out, null == hash(command.get(1)).remove(command.get(2)) ? 0L : 1L);
+                break;
+            case "HGETALL":
+                Map<String, String> all = hash(command.get(1));
+                out.write(('*' + String.valueOf(all.size() * 2)).getBytes(StandardCharsets.US_ASCII));
+                out.write(CRLF);
+                for (Map.Entry<String, String> entry : all.entrySet()) {
+                    bulk(out, entry.getKey());
+                    bulk(out, entry.getValue());
+                }
+                break;
+            default:
+                out.write(("-ERR unknown command " + command.get(0)).getBytes(
+                        StandardCharsets.US_ASCII));
+                out.write(CRLF);
+        }
+    }
+
+    private long hincrBy(String key, String field, String increment) {
+        long by = Long.parseLong(increment);
+        return Long.parseLong(hash(key).merge(field, increment,
+                (v, i) -> String.valueOf(Long.parseLong(v) + by)));
+    }
+
+    private static String sha1(String script) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(
+                    script.getBytes(StandardCharsets.UTF_8)))
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, String> hash(String key) {
+        return hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @return the arguments of the next command, which the client sends as an array of bulk
+     * strings, or null at the end of the stream
+     */
+    private static List<String> read(InputStream in) throws IOException {
+        String header = line(in);
+        if (null == header)
+            return null;
+        int count = Integer.parseInt(header.substring(1));
+        List<String> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(line(in).substring(1));
+            byte[] bytes = new byte[length];
+            for (int read = 0; read < length; ) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0)
+                    throw new EOFException();
+                read += n;
+            }
+            line(in);
+            arguments.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return arguments;
+    }
+
+    private static String line(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0)
+                return null;
+            if (b != '\r')
+                line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        out.write((':' + String.valueOf(value)).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void bulk(OutputStream out, String value) throws IOException {
+        if (null == value) {
+            out.write("$-1".getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(('$' + String.valueOf(bytes.length)).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(bytes);
+        out.write(CRLF);
+    }
+}
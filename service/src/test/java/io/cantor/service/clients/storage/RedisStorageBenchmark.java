@@ -0,0 +1,87 @@
+package io.cantor.service.clients.storage;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the increments of 8 threads, as the compute loops call them, against a {@link
+ * RedisStandIn} with a round trip of 100us, over a single pooled connection and over a pool of
+ * one connection per thread: of a single category, and of 8 categories leased together in one
+ * round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class RedisStorageBenchmark {
+
+    private static final long CATEGORY = 1L;
+    private static final long TS = 100L;
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long[] CATEGORIES = {1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L};
+    private static final long[] RANGES = {1L, 1L, 1L, 1L, 1L, 1L, 1L, 1L};
+
+    @Param({"1", "8"})
+    private int poolSize;
+
+    private RedisStandIn standIn;
+    private RedisStorage storage;
+
+    @Setup
+    public void setup() throws Exception {
+        standIn = new RedisStandIn(ROUND_TRIP_NANOS);
+        Map<String, Object> props = new HashMap<>();
+        props.put("redis.host", "127.0.0.1");
+        props.put("redis.port", standIn.port());
+        props.put("redis.pool.size", poolSize);
+        Config config = ConfigFactory.parseMap(props);
+        storage = new RedisStorage(config, "benchmark");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        storage.close();
+        standIn.close();
+    }
+
+    @Benchmark
+    public long incrementAndGet() {
+        return storage.incrementAndGet(CATEGORY, TS, 1L).orElse(0L);
+    }
+
+    @Benchmark
+    public long[] leaseCategories() {
+        return storage.incrementAndGetAsync(CATEGORIES, TS, RANGES).toCompletableFuture().join();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(
+                RedisStorageBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,94 @@
+package io.cantor.service.clients.storage;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.cantor.service.clients.Parser;
+
+public class RowLayoutTest {
+
+    // the seconds of the leases are relative to the start, and so is the cut-over in the layout
+    private static final long SINCE = 1_600_000_000L - Parser.START_EPOCH;
+    // the categories the service accepts
+    private static final long MAX_CATEGORY = 255L;
+
+    @Test
+    public void testLegacyBeforeSince() {
+        RowLayout layout = new RowLayout(4, 16, SINCE);
+        Assert.assertEquals(7, layout.table(17L, SINCE - 1));
+        Assert.assertEquals(String.valueOf(SINCE - 1), layout.row(17L, SINCE - 1));
+
+        Assert.assertEquals(1, layout.table(17L, SINCE));
+        Assert.assertTrue(layout.row(17L, SINCE).endsWith("-" + SINCE));
+    }
+
+    @Test
+    public void testNowAfterSince() {
+        long now = System.currentTimeMillis() / 1000L - Parser.START_EPOCH;
+        RowLayout layout = new RowLayout(4, 16, SINCE);
+        Assert.assertEquals(1, layout.table(17L, now));
+        Assert.assertTrue(layout.row(17L, now).endsWith("-" + now));
+    }
+
+    @Test
+    public void testLegacyWithoutSince() {
+        RowLayout layout = new RowLayout(4, 16, Long.MAX_VALUE);
+        Assert.assertEquals(7, layout.table(17L, SINCE));
+        Assert.assertEquals(String.valueOf(SINCE), layout.row(17L, SINCE));
+    }
+
+    @Test
+    public void testUnsalted() {
+        RowLayout layout = new RowLayout(10, 1, 0L);
+        Assert.assertEquals(String.valueOf(SINCE), layout.row(17L, SINCE));
+        Assert.assertEquals(0, layout.splitKeys().length);
+    }
+
+    /**
+     * The categories of the service, leased in the same second, spread over the regions every
+     * table is split into, with no region holding more than one category above another.
+     */
+    @Test
+    public void testSpread() {
+        assertSpread(10, 16);
+        assertSpread(10, 4);
+        assertSpread(4, 16);
+        assertSpread(3, 32);
+    }
+
+    private static void assertSpread(int tables, int buckets) {
+        RowLayout layout = new RowLayout(tables, buckets, 0L);
+        byte[][] splits = layout.splitKeys();
+        Assert.assertEquals(buckets - 1, splits.length);
+
+        for (int table = 0; table < tables; table++) {
+            int[] leases = new int[buckets];
+            int categories = 0;
+            for (long category = 0; category <= MAX_CATEGORY; category++) {
+                if (layout.table(category, SINCE) != table)
+                    continue;
+                leases[region(splits, Bytes.toBytes(layout.row(category, SINCE)))]++;
+                categories++;
+            }
+
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int region = 0; region < buckets; region++) {
+                min = Math.min(min, leases[region]);
+                max = Math.max(max, leases[region]);
+            }
+            String layoutName = String.format("%s tables and %s buckets, table %s", tables,
+                    buckets, table);
+            Assert.assertTrue(layoutName + " skews from " + min + " to " + max, max - min <= 1);
+            Assert.assertEquals(layoutName, (categories + buckets - 1) / buckets, max);
+        }
+    }
+
+    private static int region(byte[][] splits, byte[] row) {
+        int region = 0;
+        while (region < splits.length && Bytes.compareTo(row, splits[region]) >= 0)
+            region++;
+        return region;
+    }
+}
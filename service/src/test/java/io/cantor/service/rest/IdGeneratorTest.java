@@ -0,0 +1,224 @@
+package io.cantor.service.rest;
+
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cantor.http.Application;
+import io.cantor.http.Applications;
+import io.cantor.http.Server;
+import io.cantor.service.clients.TimeWatcher;
+import io.cantor.service.clients.storage.Storage;
+
+import static io.cantor.http.RequestMappingRegistry.HttpMethodKey.GET;
+
+public class IdGeneratorTest {
+
+    private static final String TYPE = "Gated";
+    private static final String REQUEST = "GET /id?cate=1&range=1 HTTP/1.1\r\nHost: test\r\n\r\n";
+    private static final String OK = "HTTP/1.1 200 ";
+    private static final String STATUS = "HTTP/1.1 ";
+    private static final int CONNECTIONS = 16;
+    // the requests pipelined on every connection, fewer than the ones a connection may hold back
+    private static final int PIPELINED = 256;
+    // more than the tasks the queue of the compute loop takes, which netty rounds up to 2048
+    private static final int MISSES = CONNECTIONS * PIPELINED;
+
+    /**
+     * The requests of a category which all wait for the same lease are responded once it lands,
+     * none of them is rejected by the queue of a loop.
+     */
+    @Test
+    public void testConcurrentMisses() throws Exception {
+        Map<String, Object> props = new HashMap<>();
+        props.put("dispatcher.io.threads", 1);
+        props.put("dispatcher.compute.threads", 1);
+        props.put("dispatcher.compute.queue.size", 64);
+        props.put("sequence.load.timeout.ms", 30000L);
+        props.put("sequence.prefetch.enabled", false);
+        Config config = ConfigFactory.parseMap(props);
+
+        GatedStorage storage = new GatedStorage();
+        List<Storage> storages = Collections.singletonList(storage);
+        TimeWatcher watcher = new TimeWatcher(config, storages, "test", ImmutableMap.of(TYPE, 0));
+        IdGenerator idGenerator = new IdGenerator(config, storages, watcher);
+
+        // the lease lands once every request waits for it, while the compute loop is busy
+        AtomicInteger handled = new AtomicInteger();
+        CountDownLatch landed = new CountDownLatch(1);
+        Application application = Applications.builder().inline("/id", GET, (s, req, resp) -> {
+            idGenerator.handle(s, req, resp);
+            if (MISSES == handled.incrementAndGet()) {
+                s.computeExecutor().execute(() -> await(landed));
+                new Thread(() -> {
+                    storage.gate.complete(null);
+                    landed.countDown();
+                }).start();
+            }
+        }).build();
+        int port = freePort();
+        new Server(application, config).startup(port);
+
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            new Thread(() -> {
+                try (Socket socket = new Socket("127.0.0.1", port)) {
+                    socket.setSoTimeout(60000);
+                    StringBuilder requests = new StringBuilder();
+                    for (int j = 0; j < PIPELINED; j++)
+                        requests.append(REQUEST);
+                    socket.getOutputStream().write(
+                            requests.toString().getBytes(StandardCharsets.US_ASCII));
+                    String responses = read(socket.getInputStream(), PIPELINED);
+                    ok.addAndGet(count(responses, OK));
+                    failed.addAndGet(PIPELINED - count(responses, OK));
+                } catch (IOException e) {
+                    failed.addAndGet(PIPELINED);
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        Assert.assertTrue(latch.await(90, TimeUnit.SECONDS));
+        idGenerator.close();
+
+        Assert.assertEquals(0, failed.get());
+        Assert.assertEquals(MISSES, ok.get());
+        Assert.assertTrue(storage.leases.get() < MISSES);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * @return what is read until the status lines of the responses are all in
+     */
+    private static String read(InputStream in, int responses) throws IOException {
+        StringBuilder read = new StringBuilder();
+        byte[] buffer = new byte[8192];
+        while (count(read, STATUS) < responses) {
+            int n = in.read(buffer);
+            if (n < 0)
+                break;
+            read.append(new String(buffer, 0, n, StandardCharsets.US_ASCII));
+        }
+        return read.toString();
+    }
+
+    private static int count(CharSequence text, String part) {
+        int count = 0;
+        for (int i = text.toString().indexOf(part); i >= 0;
+             i = text.toString().indexOf(part, i + part.length()))
+            count++;
+        return count;
+    }
+
+    /**
+     * Leases from one counter once the gate is open, on the thread which opens it.
+     */
+    private static class GatedStorage implements Storage {
+        final CompletableFuture<Void> gate = new CompletableFuture<>();
+        final AtomicLong counter = new AtomicLong();
+        final AtomicInteger leases = new AtomicInteger();
+
+        @Override
+        public Optional<Long> incrementAndGet(long category, long ts, long range) {
+            return Optional.of(incrementAndGetAsync(category, ts, range).toCompletableFuture()
+                                                                         .join());
+        }
+
+        @Override
+        public CompletionStage<Long> incrementAndGetAsync(long category, long ts, long range) {
+            leases.incrementAndGet();
+            return gate.thenApply(v -> counter.addAndGet(range));
+        }
+
+        @Override
+        public CompletionStage<long[]> incrementAndGetAsync(long[] categories, long ts,
+                                                            long[] ranges) {
+            leases.incrementAndGet();
+            return gate.thenApply(v -> {
+                long[] afters = new long[categories.length];
+                for (int i = 0; i < categories.length; i++)
+                    afters[i] = counter.addAndGet(ranges[i]);
+                return afters;
+            });
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean available() {
+            return true;
+        }
+
+        @Override
+        public long syncTime(long localTime) {
+            return localTime;
+        }
+
+        @Override
+        public List<Long> timeMeta() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void deregister() {
+        }
+
+        @Override
+        public String type() {
+            return TYPE;
+        }
+
+        @Override
+        public long descriptor() {
+            return 0;
+        }
+
+        @Override
+        public int checkAndRegister(int maxInstances) {
+            return 0;
+        }
+
+        @Override
+        public boolean heartbeat(int instanceNumber, int ttl) {
+            return true;
+        }
+    }
+}